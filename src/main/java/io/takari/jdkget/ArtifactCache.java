@@ -0,0 +1,298 @@
+package io.takari.jdkget;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+
+import io.takari.jdkget.model.JdkBinary;
+
+/**
+ * Local cache of downloaded images, shared between runs and processes on the same host. Entries are
+ * addressed by the sha256 (or md5) the binary declares, so binaries without digests are never cached.
+ * <p>
+ * Entries are published by an atomic rename and the total size is kept under a bound by evicting the
+ * least recently used entries. Modifications are serialized with a lock file in the cache directory.
+ * <p>
+ * Entries are hard linked to the images they were put from or fetched to where possible, so their own
+ * modification time must not change; uses are recorded on an empty ".used" file next to
+ * each entry instead. Entries still linked elsewhere take no space of their own, they neither count
+ * towards the bound nor get evicted.
+ */
+public class ArtifactCache {
+
+  public static final long DEFAULT_MAX_SIZE = 10L * 1024L * 1024L * 1024L;
+
+  private static final String LOCK_FILE = ".lock";
+  private static final String TMP_DIR = ".tmp";
+  private static final String USED_SUFFIX = ".used";
+
+  // file locks are held by the whole jvm, threads have to be serialized separately
+  private static final Map<String, Object> jvmLocks = new ConcurrentHashMap<>();
+
+  private final File dir;
+  private final long maxSize;
+
+  public ArtifactCache(File dir) {
+    this(dir, DEFAULT_MAX_SIZE);
+  }
+
+  public ArtifactCache(File dir, long maxSize) {
+    this.dir = dir.getAbsoluteFile();
+    this.maxSize = maxSize;
+  }
+
+  public File getDir() {
+    return dir;
+  }
+
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Places the cached image of the binary at target, as a hard link if possible or a copy otherwise.
+   * Returns false if the cache has no such image.
+   */
+  public boolean fetch(JdkBinary bin, File target, IOutput output) throws IOException, InterruptedException {
+    File entry = entry(bin);
+    if (entry == null) {
+      return false;
+    }
+
+    InputStream in;
+    synchronized (jvmLock()) {
+      FileLock lock = lock();
+      try {
+        if (!entry.isFile()) {
+          return false;
+        }
+        // hits refresh the entry for eviction
+        used(entry);
+        if (link(entry, target)) {
+          output.info("Using cached " + entry);
+          return true;
+        }
+        // an open stream keeps reading the entry even if it gets evicted meanwhile
+        in = new FileInputStream(entry);
+      } finally {
+        lock.release();
+      }
+    }
+
+    output.info("Copying cached " + entry);
+    File tmp = new File(target.getParentFile(), "." + target.getName() + "." + UUID.randomUUID() + ".tmp");
+    try {
+      try (InputStream i = in; OutputStream out = new FileOutputStream(tmp)) {
+        Util.copyInterruptibly(i, out);
+      }
+      Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      FileUtils.deleteQuietly(tmp);
+    }
+    return true;
+  }
+
+  /**
+   * Adds a validated image of the binary to the cache, unless it is already there, and evicts least
+   * recently used entries if the cache grows over its size bound.
+   */
+  public void put(JdkBinary bin, File image, IOutput output) throws IOException, InterruptedException {
+    File entry = entry(bin);
+    if (entry == null || entry.isFile()) {
+      return;
+    }
+
+    // make sure the content really is what the key says, digests recorded during the download make this free
+    if (!Digests.get(image, bin).validate(bin, output)) {
+      return;
+    }
+
+    File tmpDir = new File(dir, TMP_DIR);
+    FileUtils.forceMkdir(tmpDir);
+    File tmp = new File(tmpDir, UUID.randomUUID().toString());
+    try {
+      if (!link(image, tmp)) {
+        Util.copyFile(image, tmp);
+      }
+
+      synchronized (jvmLock()) {
+        FileLock lock = lock();
+        try {
+          if (!entry.isFile()) {
+            FileUtils.forceMkdir(entry.getParentFile());
+            Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            output.info("Cached " + image.getName() + " as " + entry);
+          }
+          used(entry);
+          evict(entry, output);
+        } finally {
+          lock.release();
+        }
+      }
+    } finally {
+      FileUtils.deleteQuietly(tmp);
+    }
+  }
+
+  /**
+   * Drops the cached image of the binary, for when a fetched copy failed validation.
+   */
+  public void invalidate(JdkBinary bin) throws IOException {
+    File entry = entry(bin);
+    if (entry == null) {
+      return;
+    }
+    synchronized (jvmLock()) {
+      FileLock lock = lock();
+      try {
+        Files.deleteIfExists(entry.toPath());
+        Files.deleteIfExists(usedFile(entry).toPath());
+      } finally {
+        lock.release();
+      }
+    }
+  }
+
+  File entry(JdkBinary bin) {
+    if (bin.getSha256() != null) {
+      return new File(dir, "sha256/" + bin.getSha256().toLowerCase());
+    }
+    if (bin.getMd5() != null) {
+      return new File(dir, "md5/" + bin.getMd5().toLowerCase());
+    }
+    return null;
+  }
+
+  static File usedFile(File entry) {
+    return new File(entry.getPath() + USED_SUFFIX);
+  }
+
+  private static void used(File entry) throws IOException {
+    FileUtils.touch(usedFile(entry));
+  }
+
+  /**
+   * Last use of the entry, for entries cached before uses were recorded the time it was added.
+   */
+  private static long lastUsed(File entry) {
+    long used = usedFile(entry).lastModified();
+    return used != 0 ? used : entry.lastModified();
+  }
+
+  private void evict(File keep, IOutput output) {
+    List<File> entries = new ArrayList<>();
+    long total = 0;
+    for (String algo : new String[] {"sha256", "md5"}) {
+      File[] files = new File(dir, algo).listFiles();
+      if (files != null) {
+        for (File f : files) {
+          // removing an entry linked elsewhere would not free anything
+          if (!f.getName().endsWith(USED_SUFFIX) && links(f) <= 1) {
+            entries.add(f);
+            total += f.length();
+          }
+        }
+      }
+    }
+    if (total <= maxSize) {
+      return;
+    }
+
+    Map<File, Long> used = new HashMap<>();
+    entries.forEach(f -> used.put(f, lastUsed(f)));
+    entries.sort(Comparator.comparing(used::get));
+    for (File f : entries) {
+      if (total <= maxSize) {
+        break;
+      }
+      if (f.equals(keep)) {
+        continue;
+      }
+      long size = f.length();
+      if (f.delete()) {
+        usedFile(f).delete();
+        output.info("Evicted " + f + " from cache");
+        total -= size;
+      }
+    }
+  }
+
+  /**
+   * Number of hard links to the file, 1 where that is not known.
+   */
+  private static int links(File f) {
+    try {
+      return ((Number) Files.getAttribute(f.toPath(), "unix:nlink")).intValue();
+    } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+      return 1;
+    }
+  }
+
+  private static boolean link(File existing, File link) {
+    try {
+      Files.createLink(link.toPath(), existing.toPath());
+      return true;
+    } catch (IOException | UnsupportedOperationException e) {
+      // different file system or no hard link support
+      return false;
+    }
+  }
+
+  private Object jvmLock() {
+    return jvmLocks.computeIfAbsent(dir.getPath(), k -> new Object());
+  }
+
+  private FileLock lock() throws IOException {
+    FileUtils.forceMkdir(dir);
+    FileChannel ch = new RandomAccessFile(new File(dir, LOCK_FILE), "rw").getChannel();
+    try {
+      return new ChannelLock(ch, ch.lock());
+    } catch (IOException | RuntimeException e) {
+      ch.close();
+      throw e;
+    }
+  }
+
+  /**
+   * File lock that also closes its channel when released.
+   */
+  private static class ChannelLock extends FileLock {
+    private final FileLock lock;
+
+    ChannelLock(FileChannel ch, FileLock lock) {
+      super(ch, lock.position(), lock.size(), lock.isShared());
+      this.lock = lock;
+    }
+
+    @Override
+    public boolean isValid() {
+      return lock.isValid();
+    }
+
+    @Override
+    public void release() throws IOException {
+      try {
+        lock.release();
+      } finally {
+        channel().close();
+      }
+    }
+  }
+}
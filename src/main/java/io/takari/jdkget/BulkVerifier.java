@@ -0,0 +1,138 @@
+package io.takari.jdkget;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Throwables;
+
+import io.takari.jdkget.model.JdkBinary;
+
+/**
+ * Hashes many images at once on a bounded pool, each in a single pass computing all the digests its binary
+ * declares. The pool is as large as there are processors on solid state storage; on spinning disks
+ * concurrent readers mostly add seeks, so only two files are read at a time there.
+ */
+class BulkVerifier implements Closeable {
+
+  static final int ROTATIONAL_THREADS = 2;
+
+  private static final long IDLE_TIMEOUT = 60L * 1000L;
+
+  // one per storage, for checks of single files that may run concurrently from anywhere in the jvm
+  private static final Map<Object, BulkVerifier> shared = new ConcurrentHashMap<>();
+
+  private final ThreadPoolExecutor executor;
+
+  BulkVerifier(int threads) {
+    AtomicInteger n = new AtomicInteger();
+    int size = Math.max(1, threads);
+    this.executor = new ThreadPoolExecutor(size, size, IDLE_TIMEOUT, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), r -> {
+          Thread t = new Thread(r, "jdkget-verify-" + n.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        });
+  }
+
+  /**
+   * Returns the verifier shared by all checks of files on the same storage as dir. Its threads time out
+   * when idle, and it must not be closed.
+   */
+  static BulkVerifier shared(File dir) {
+    Object store;
+    try {
+      store = Files.getFileStore(existing(dir).toPath());
+    } catch (IOException | RuntimeException e) {
+      store = "";
+    }
+    return shared.computeIfAbsent(store, s -> {
+      BulkVerifier v = new BulkVerifier(defaultThreads(dir));
+      v.executor.allowCoreThreadTimeOut(true);
+      return v;
+    });
+  }
+
+  /**
+   * Computes the digests of the file for the binary, see {@link Digests#get(File, JdkBinary)}.
+   */
+  Future<Digests> digests(File file, JdkBinary bin) {
+    return executor.submit(() -> Digests.get(file, bin));
+  }
+
+  /**
+   * Computes the digests of the file for the binary and waits for them.
+   */
+  Digests await(File file, JdkBinary bin) throws IOException, InterruptedException {
+    Future<Digests> f = digests(file, bin);
+    try {
+      return f.get();
+    } catch (InterruptedException e) {
+      f.cancel(true);
+      throw e;
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), InterruptedException.class);
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new IOException(e.getCause());
+    }
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Number of files worth reading concurrently from the storage holding dir.
+   */
+  static int defaultThreads(File dir) {
+    int cores = Runtime.getRuntime().availableProcessors();
+    return isRotational(dir) ? Math.min(cores, ROTATIONAL_THREADS) : cores;
+  }
+
+  /**
+   * Returns true if dir is known to be on a spinning disk, which can only be told on linux.
+   */
+  static boolean isRotational(File dir) {
+    File f = existing(dir);
+    if (f == null) {
+      return false;
+    }
+    try {
+      FileStore store = Files.getFileStore(f.toPath());
+      // like /dev/sda1, whose queue is that of the whole disk one level up in sysfs
+      File block = new File("/sys/class/block", new File(store.name()).getName());
+      if (!block.exists()) {
+        return false;
+      }
+      for (File d : new File[] {block, block.getCanonicalFile().getParentFile()}) {
+        File rotational = new File(d, "queue/rotational");
+        if (rotational.isFile()) {
+          return new String(Files.readAllBytes(rotational.toPath()), StandardCharsets.US_ASCII).trim().equals("1");
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      // unknown, assume solid state
+    }
+    return false;
+  }
+
+  private static File existing(File dir) {
+    File f = dir.getAbsoluteFile();
+    while (f != null && !f.exists()) {
+      f = f.getParentFile();
+    }
+    return f;
+  }
+}
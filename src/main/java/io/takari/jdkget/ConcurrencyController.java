@@ -0,0 +1,70 @@
+package io.takari.jdkget;
+
+/**
+ * Picks the number of concurrent downloads from what each sampling window achieved. The controller
+ * backs off multiplicatively when downloads fail, since timeouts and errors are how servers push back.
+ * It adds one download at a time for as long as doing so raises throughput by at least
+ * {@link #MIN_GAIN}. It steps back once an addition stops paying off, and probes one level higher again
+ * after {@link #PROBE_WINDOWS} stable windows in case the link got better.
+ */
+class ConcurrencyController {
+
+  static final double MIN_GAIN = 0.05;
+  static final int PROBE_WINDOWS = 3;
+
+  private final int min;
+  private final int max;
+  private int limit;
+
+  private double previous;
+  private boolean increased;
+  private int stable = PROBE_WINDOWS;
+
+  ConcurrencyController(int min, int max) {
+    this.min = Math.max(1, min);
+    this.max = Math.max(this.min, max);
+    this.limit = this.min;
+  }
+
+  int getLimit() {
+    return limit;
+  }
+
+  int getMin() {
+    return min;
+  }
+
+  int getMax() {
+    return max;
+  }
+
+  /**
+   * Takes the results of a window and returns the limit for the next one.
+   *
+   * @param throughput bytes per second transferred during the window
+   * @param failures downloads that failed during the window
+   * @param saturated whether there was enough queued work to keep every allowed download busy
+   */
+  int update(double throughput, int failures, boolean saturated) {
+    if (failures > 0) {
+      limit = Math.max(min, limit / 2);
+      increased = false;
+      stable = 0;
+    } else if (!saturated) {
+      // running below the limit says nothing about whether a higher one would help
+      return limit;
+    } else if (increased && throughput < previous * (1 + MIN_GAIN)) {
+      limit = Math.max(min, limit - 1);
+      increased = false;
+      stable = 0;
+    } else if ((increased || ++stable >= PROBE_WINDOWS) && limit < max) {
+      limit++;
+      increased = true;
+      stable = 0;
+    } else {
+      increased = false;
+    }
+    previous = throughput;
+    return limit;
+  }
+}
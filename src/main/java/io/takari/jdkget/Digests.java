@@ -0,0 +1,207 @@
+package io.takari.jdkget;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import io.takari.jdkget.model.JdkBinary;
+
+/**
+ * Size and digests of a jdk image, computed in a single pass over its bytes.
+ * <p>
+ * Digests computed while an image is being written can be recorded against the file, later validations
+ * of the unchanged file then reuse them instead of reading it again.
+ */
+public class Digests {
+
+  private static final int READ_BUFFER_SIZE = 1024 * 1024;
+  private static final int MAX_RECORDED = 1024;
+
+  // most recently recorded or used files, older ones are hashed again if ever needed
+  private static final Map<String, Digests> recorded = new LinkedHashMap<String, Digests>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Digests> eldest) {
+      return size() > MAX_RECORDED;
+    }
+  };
+
+  // hashers only take arrays, so reads go to a heap buffer, large to keep the system calls few
+  private static final ThreadLocal<ByteBuffer> readBuffer =
+      ThreadLocal.withInitial(() -> ByteBuffer.allocate(READ_BUFFER_SIZE));
+
+  private final long size;
+  private final String md5;
+  private final String sha256;
+  private final long lastModified;
+
+  Digests(long size, String md5, String sha256) {
+    this(size, md5, sha256, -1);
+  }
+
+  private Digests(long size, String md5, String sha256, long lastModified) {
+    this.size = size;
+    this.md5 = md5;
+    this.sha256 = sha256;
+    this.lastModified = lastModified;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public String getMd5() {
+    return md5;
+  }
+
+  public String getSha256() {
+    return sha256;
+  }
+
+  /**
+   * Returns true if all digests the binary declares were computed.
+   */
+  public boolean covers(JdkBinary bin) {
+    return (bin.getMd5() == null || md5 != null) && (bin.getSha256() == null || sha256 != null);
+  }
+
+  public boolean validate(JdkBinary bin, IOutput output) {
+    int checks = 0;
+    int failed = 0;
+
+    if (bin.getSha256() != null) {
+      checks++;
+      if (!bin.getSha256().equals(sha256)) {
+        failed++;
+        output.error("File sha256 `" + sha256 + "` differs from `" + bin.getSha256() + "`");
+      }
+    }
+    if (bin.getMd5() != null) {
+      checks++;
+      if (!bin.getMd5().equals(md5)) {
+        failed++;
+        output.error("File md5 `" + md5 + "` differs from `" + bin.getMd5() + "`");
+      }
+    }
+    if (bin.getSize() != -1) {
+      checks++;
+      if (bin.getSize() != size) {
+        failed++;
+        output.error("File size `" + size + "` differs from `" + bin.getSize() + "`");
+      }
+    }
+
+    return checks == 0 || failed == 0;
+  }
+
+  /**
+   * Returns the digests recorded for the file if it has not changed since, otherwise reads it once to
+   * compute all digests the binary declares.
+   */
+  public static Digests get(File file, JdkBinary bin) throws IOException, InterruptedException {
+    Digests d;
+    synchronized (recorded) {
+      d = recorded.get(file.getAbsolutePath());
+    }
+    if (d != null && d.covers(bin) && d.size == file.length() && d.lastModified == file.lastModified()) {
+      return d;
+    }
+
+    Digester digester = digester(bin);
+    ByteBuffer buf = readBuffer.get();
+    // read through a channel, which an interrupt closes, so cancelled bulk checks stop right away
+    try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      buf.clear();
+      int l;
+      while ((l = ch.read(buf)) != -1) {
+        Util.checkInterrupt();
+        digester.update(buf.array(), 0, l);
+        buf.clear();
+      }
+    } catch (ClosedByInterruptException e) {
+      throw new InterruptedException();
+    }
+    d = digester.digests();
+    record(file, d);
+    return d;
+  }
+
+  /**
+   * Records digests for the file as it is now, to be reused by {@link #get(File, JdkBinary)}.
+   */
+  public static void record(File file, Digests digests) {
+    if (digests.size != file.length()) {
+      return;
+    }
+    Digests d = new Digests(digests.size, digests.md5, digests.sha256, file.lastModified());
+    synchronized (recorded) {
+      recorded.put(file.getAbsolutePath(), d);
+    }
+  }
+
+  /**
+   * Creates a digester computing the digests declared by the binary.
+   */
+  public static Digester digester(JdkBinary bin) {
+    return new Digester(bin.getMd5() != null, bin.getSha256() != null);
+  }
+
+  public static class Digester {
+    private final Hasher md5;
+    private final Hasher sha256;
+    private long size;
+
+    public Digester(boolean md5, boolean sha256) {
+      this.md5 = md5 ? Hashing.md5().newHasher() : null;
+      this.sha256 = sha256 ? Hashing.sha256().newHasher() : null;
+    }
+
+    public void update(byte[] b, int off, int len) {
+      if (md5 != null) {
+        md5.putBytes(b, off, len);
+      }
+      if (sha256 != null) {
+        sha256.putBytes(b, off, len);
+      }
+      size += len;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    /**
+     * Wraps the stream so that everything written to it also goes through this digester.
+     */
+    public OutputStream wrap(OutputStream out) {
+      return new FilterOutputStream(out) {
+        @Override
+        public void write(int b) throws IOException {
+          write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+          out.write(b, off, len);
+          update(b, off, len);
+        }
+      };
+    }
+
+    public Digests digests() {
+      return new Digests(size, md5 == null ? null : md5.hash().toString(),
+          sha256 == null ? null : sha256.hash().toString());
+    }
+  }
+}
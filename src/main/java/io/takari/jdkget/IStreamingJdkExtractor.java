@@ -0,0 +1,16 @@
+package io.takari.jdkget;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import io.takari.jdkget.model.JdkBinary;
+
+/**
+ * Extractor that reads the image sequentially, so it can unpack it while it is still being downloaded.
+ */
+public interface IStreamingJdkExtractor extends IJdkExtractor {
+
+  boolean extractJdk(JdkGetter context, JdkBinary bin, InputStream jdkImage, File outputDir) throws IOException, InterruptedException;
+
+}
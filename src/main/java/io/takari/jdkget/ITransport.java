@@ -1,19 +1,67 @@
 package io.takari.jdkget;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import io.takari.jdkget.model.JCE;
 import io.takari.jdkget.model.JdkBinary;
 
-public interface ITransport {
+public interface ITransport extends Closeable {
 
   void downloadJdk(JdkGetter context, JdkBinary binary, File jdkImage) throws IOException, InterruptedException;
 
+  /**
+   * Downloads the image like {@link #downloadJdk(JdkGetter, JdkBinary, File)} while also writing its bytes,
+   * in order, to the given stream. Transports that cannot do this on the fly copy the image once it is
+   * complete.
+   */
+  default void downloadJdk(JdkGetter context, JdkBinary binary, File jdkImage, OutputStream tee)
+      throws IOException, InterruptedException {
+    downloadJdk(context, binary, jdkImage);
+    try (InputStream in = new FileInputStream(jdkImage)) {
+      Util.copyInterruptibly(in, tee);
+    }
+  }
+
   default void downloadJce(JdkGetter context, JCE jce, File jceImage) throws IOException, InterruptedException {
     throw new UnsupportedOperationException();
   }
 
   boolean validate(JdkGetter context, JdkBinary binary, File jdkImage) throws IOException, InterruptedException;
 
+  /**
+   * Returns true if {@link #validate(JdkGetter, JdkBinary, File)} checks the {@link Digests} of the image,
+   * which can then be computed beforehand and are not read again. Transports that validate some other way
+   * return false, and existing images are left for them to read.
+   */
+  default boolean validatesDigests() {
+    return false;
+  }
+
+  /**
+   * Limits applied to, and bytes counted for, the downloads of this transport. Transports that do not
+   * override this neither limit nor count anything.
+   */
+  default Throttle getThrottle() {
+    return Throttle.unlimited();
+  }
+
+  /**
+   * Returns the host the binary is downloaded from, or null if there is none or it is not known upfront.
+   * Used to spread concurrent downloads over hosts.
+   */
+  default String getHost(JdkBinary binary) {
+    return null;
+  }
+
+  /**
+   * Releases resources held by the transport, like pooled connections.
+   */
+  @Override
+  default void close() throws IOException {}
+
 }
@@ -10,6 +10,12 @@ public interface ITransportFactory extends Serializable {
   public static final String PARAM_BASEURL = "io.takari.jdkget.baseUrl";
   public static final String PARAM_USERNAME = "io.takari.jdkget.username";
   public static final String PARAM_PASSWORD = "io.takari.jdkget.password";
+  public static final String PARAM_CONNECTIONS = "io.takari.jdkget.connections";
+  public static final String PARAM_MAX_CONNECTIONS = "io.takari.jdkget.maxConnections";
+  public static final String PARAM_MAX_CONNECTIONS_PER_ROUTE = "io.takari.jdkget.maxConnectionsPerRoute";
+  public static final String PARAM_RATE_LIMIT = "io.takari.jdkget.rateLimit";
+  public static final String PARAM_RATE_LIMIT_HOURS = "io.takari.jdkget.rateLimitHours";
+  public static final String PARAM_HOST_CONNECTIONS = "io.takari.jdkget.hostConnections";
 
   ITransport createTransport(Map<String, String> parameters);
 
@@ -4,13 +4,20 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
 import com.google.common.base.Throwables;
 
+import io.takari.jdkget.RetryPolicy.CircuitOpenException;
 import io.takari.jdkget.extract.BinJDKExtractor;
 import io.takari.jdkget.extract.OsxJDKExtractor;
 import io.takari.jdkget.extract.TZJDKExtractor;
@@ -33,11 +40,16 @@ public class JdkGetter {
   public static final int CONNECT_TIMEOUT = 30 * 1000;
   public static final int SOCKET_TIMEOUT = 2 * 60 * 1000;
 
+  private static final int PIPE_SIZE = 4 * 1024 * 1024;
+
   private final ITransport transport;
   private final IOutput log;
 
   private boolean removeDownloads = true;
   private boolean silent = false;
+  private boolean streamingExtract = false;
+  private ArtifactCache cache;
+  private RetryPolicy retryPolicy = new RetryPolicy();
   private int retries = DEFAULT_RETRIES;
   private int socketTimeout = SOCKET_TIMEOUT;
   private int connectTimeout = CONNECT_TIMEOUT;
@@ -72,6 +84,41 @@ public class JdkGetter {
     this.silent = silent;
   }
 
+  public boolean isStreamingExtract() {
+    return streamingExtract;
+  }
+
+  /**
+   * Extract tar.gz and zip images while they are being downloaded. The image is still kept and validated,
+   * and the extracted files only replace the output directory if it turns out valid.
+   */
+  public void setStreamingExtract(boolean streamingExtract) {
+    this.streamingExtract = streamingExtract;
+  }
+
+  public ArtifactCache getCache() {
+    return cache;
+  }
+
+  /**
+   * Looks up images in the cache before downloading them, and adds downloaded images to it.
+   */
+  public void setCache(ArtifactCache cache) {
+    this.cache = cache;
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * Backoff, retry budget and circuit breakers used by this getter and its transport. Share one policy
+   * between getters talking to the same hosts.
+   */
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
   public int getRetries() {
     return retries;
   }
@@ -151,14 +198,100 @@ public class JdkGetter {
       }
     }
 
+    fetchCached(bin, jdkImage);
+
+    IJdkExtractor extractor = getExtractor(jdkImage);
+    boolean extracted = false;
+    if (streamingExtract && extractor instanceof IStreamingJdkExtractor && !jdkImage.exists()) {
+      extracted = getStreaming(bin, jdkImage, (IStreamingJdkExtractor) extractor, outputDirectory);
+    }
+    if (!extracted) {
+      download(bin, jdkImage, theVersion.shortBuild() + " for " + arch);
+      getLog().info("Using extractor " + extractor.getClass().getSimpleName());
+      if (!extractor.extractJdk(this, bin, jdkImage, outputDirectory)) {
+        throw new IOException("Failed to extract JDK from " + jdkImage);
+      }
+    }
+    if (cache != null) {
+      cache.put(bin, jdkImage, getLog());
+    }
+
+    File jdkHome = outputDirectory;
+    boolean libFound = new File(jdkHome, "lib").isDirectory();
+    if (!libFound) {
+      File osxHome = new File(jdkHome, "Contents/Home");
+      if (new File(osxHome, "lib").isDirectory()) {
+        jdkHome = osxHome;
+        libFound = true;
+      }
+    }
+    if (!libFound) {
+      throw new IOException("Cannot detect jdk installation");
+    }
+
+    if (jceImage != null && !jceImage.exists()) {
+      transport.downloadJce(this, jce, jceImage);
+      new JCEExtractor().extractJCE(this, type, jceImage, jdkHome);
+    }
+    if (jceFix) {
+      new JCEExtractor().fixJce(this, type, jdkHome);
+    }
+
+    // rebuild jsa cache (https://docs.oracle.com/javase/9/vm/class-data-sharing.htm)
+    // but only if we're running on a compatible system (usually we do)
+    if (arch == Arch.autodetect()) {
+      rebuildJsa(arch, jdkHome);
+    }
+
+    if (removeDownloads) {
+      if (jdkImage.exists()) {
+        FileUtils.forceDelete(jdkImage);
+      }
+      if (jceImage != null && jceImage.exists()) {
+        FileUtils.forceDelete(jceImage);
+      }
+    }
+  }
+
+  /**
+   * Places the cached copy of the binary at jdkImage, if there is a cache and the file does not exist yet.
+   * Returns true if a valid copy was found.
+   */
+  boolean fetchCached(JdkBinary bin, File jdkImage) throws IOException, InterruptedException {
+    if (cache == null || jdkImage.exists() || !cache.fetch(bin, jdkImage, getLog())) {
+      return false;
+    }
+    if (validateExisting(bin, jdkImage)) {
+      return true;
+    }
+    getLog().info("Cached image failed validation, dropping it");
+    cache.invalidate(bin);
+    FileUtils.forceDelete(jdkImage);
+    return false;
+  }
+
+  /**
+   * Validates an image that was already on disk. If the transport validates digests, the image is hashed
+   * on the verifier shared by all checks of its storage, which bounds how many files are read at once, and
+   * the transport then validates it against the recorded digests.
+   */
+  private boolean validateExisting(JdkBinary bin, File jdkImage) throws IOException, InterruptedException {
+    if (transport.validatesDigests()) {
+      BulkVerifier.shared(jdkImage.getAbsoluteFile().getParentFile()).await(jdkImage, bin);
+    }
+    return transport.validate(this, bin, jdkImage);
+  }
+
+  private void download(JdkBinary bin, File jdkImage, String versionDesc) throws IOException, InterruptedException {
     boolean valid = false;
     int retr = retries;
+    int attempt = 0;
 
     while (!valid) {
       boolean dontRetry = retr <= 0;
       try {
         if (jdkImage.exists()) {
-          if (transport.validate(this, bin, jdkImage)) {
+          if (validateExisting(bin, jdkImage)) {
             getLog().info("We already have a valid copy of " + jdkImage);
           } else {
             getLog().info("Found existing invalid image");
@@ -171,7 +304,7 @@ public class JdkGetter {
         }
 
         if (!jdkImage.exists()) {
-          getLog().error("Cannot download jdk " + theVersion.shortBuild() + " for " + arch);
+          getLog().error("Cannot download jdk " + versionDesc);
           throw new IOException("Transport failed to download jdk image");
         }
 
@@ -182,62 +315,106 @@ public class JdkGetter {
       } catch (InterruptedException e) {
         throw e;
       } catch (Exception e) {
-        if (dontRetry) {
+        // an open circuit fails fast, retrying here would only wait for the same answer
+        if (dontRetry || e instanceof CircuitOpenException || !retryPolicy.acquireRetry()) {
           Throwables.propagateIfPossible(e, IOException.class);
           throw Throwables.propagate(e);
         }
         getLog().error("Error getting jdk: " + e.toString() + ", retrying..");
-        valid = false;
+        retryPolicy.backoff(attempt++);
+        retr--;
+        continue;
       }
 
-      if (!valid && dontRetry) {
+      if (valid) {
+        retryPolicy.succeeded();
+      } else if (dontRetry || !retryPolicy.acquireRetry()) {
         break;
+      } else {
+        retryPolicy.backoff(attempt++);
       }
       retr--;
     }
     if (!valid) {
       throw new IOException("Transport downloaded invalid image");
     }
+  }
 
-    IJdkExtractor extractor = getExtractor(jdkImage);
-    getLog().info("Using extractor " + extractor.getClass().getSimpleName());
-    if (!extractor.extractJdk(this, bin, jdkImage, outputDirectory)) {
-      throw new IOException("Failed to extract JDK from " + jdkImage);
+  /**
+   * Downloads the image while extracting it into a staging directory, which is moved to outputDirectory
+   * once the image is known to be valid. Returns false if that did not work out, leaving it to the
+   * regular download and extraction.
+   */
+  private boolean getStreaming(JdkBinary bin, File jdkImage, IStreamingJdkExtractor extractor, File outputDirectory)
+      throws IOException, InterruptedException {
+    File staging = new File(outputDirectory.getAbsoluteFile().getParentFile(), "." + outputDirectory.getName() + ".staging");
+    if (staging.exists()) {
+      FileUtils.forceDelete(staging);
     }
+    getLog().info("Using streaming extractor " + extractor.getClass().getSimpleName());
 
-    File jdkHome = outputDirectory;
-    boolean libFound = new File(jdkHome, "lib").isDirectory();
-    if (!libFound) {
-      File osxHome = new File(jdkHome, "Contents/Home");
-      if (new File(osxHome, "lib").isDirectory()) {
-        jdkHome = osxHome;
-        libFound = true;
+    Pipe pipe = new Pipe(PIPE_SIZE);
+    ExecutorService ex = Executors.newSingleThreadExecutor();
+    try {
+      Future<Boolean> extraction = ex.submit(() -> {
+        try (InputStream in = pipe.source) {
+          boolean ok = extractor.extractJdk(this, bin, in, staging);
+          // consume archive padding so the download never blocks on a full pipe
+          IOUtils.skip(in, Long.MAX_VALUE);
+          return ok;
+        }
+      });
+
+      try {
+        transport.downloadJdk(this, bin, jdkImage, pipe.sink);
+      } finally {
+        pipe.sink.close();
       }
-    }
-    if (!libFound) {
-      throw new IOException("Cannot detect jdk installation");
-    }
 
-    if (jceImage != null && !jceImage.exists()) {
-      transport.downloadJce(this, jce, jceImage);
-      new JCEExtractor().extractJCE(this, type, jceImage, jdkHome);
-    }
-    if (jceFix) {
-      new JCEExtractor().fixJce(this, type, jdkHome);
-    }
+      if (!extraction.get()) {
+        throw new IOException("Failed to extract JDK from " + jdkImage);
+      }
 
-    // rebuild jsa cache (https://docs.oracle.com/javase/9/vm/class-data-sharing.htm)
-    // but only if we're running on a compatible system (usually we do)
-    if (arch == Arch.autodetect()) {
-      rebuildJsa(arch, jdkHome);
-    }
+      getLog().info("Validating downloaded image");
+      if (!transport.validate(this, bin, jdkImage)) {
+        throw new IOException("Transport downloaded invalid image");
+      }
 
-    if (removeDownloads) {
-      if (jdkImage.exists()) {
-        FileUtils.forceDelete(jdkImage);
+      promote(staging, outputDirectory);
+      return true;
+    } catch (InterruptedException e) {
+      throw e;
+    } catch (Exception e) {
+      Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+      Throwables.propagateIfInstanceOf(cause, InterruptedException.class);
+      getLog().error("Error streaming jdk: " + cause + ", falling back to regular download");
+      return false;
+    } finally {
+      ex.shutdownNow();
+      pipe.source.close();
+      if (staging.exists()) {
+        FileUtils.deleteQuietly(staging);
       }
-      if (jceImage != null && jceImage.exists()) {
-        FileUtils.forceDelete(jceImage);
+    }
+  }
+
+  private static void promote(File staging, File outputDirectory) throws IOException {
+    String[] existing = outputDirectory.list();
+    if (existing != null && existing.length == 0) {
+      Files.delete(outputDirectory.toPath());
+    }
+    if (!outputDirectory.exists()) {
+      Files.move(staging.toPath(), outputDirectory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      return;
+    }
+    File[] files = staging.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        File target = new File(outputDirectory, f.getName());
+        if (target.exists()) {
+          FileUtils.forceDelete(target);
+        }
+        Files.move(f.toPath(), target.toPath());
       }
     }
   }
@@ -1,6 +1,11 @@
 package io.takari.jdkget;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -12,6 +17,7 @@ import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.PosixParser;
+import org.apache.commons.io.IOUtils;
 
 import com.fasterxml.jackson.databind.ext.Java7SupportImpl;
 import com.google.common.base.Preconditions;
@@ -21,6 +27,10 @@ import io.takari.jdkget.model.BinaryType;
 import io.takari.jdkget.model.JdkRelease;
 import io.takari.jdkget.model.JdkReleases;
 import io.takari.jdkget.model.JdkVersion;
+import io.takari.jdkget.model.VersionRange;
+import io.takari.jdkget.mirror.MirrorServer;
+import io.takari.jdkget.mirror.MirrorTransportFactory;
+import io.takari.jdkget.oracle.OracleWebsiteTransport;
 
 public class Main {
 
@@ -31,17 +41,38 @@ public class Main {
     cliOptions.addOption("t", true, "Java release type of: jdk(default), jre, serverjre");
     cliOptions.addOption("a", true, "Architecture");
     cliOptions.addOption("l", false, "List versions");
-    cliOptions.addOption("u", true, "Alternate url to oracle.com/otn-pub");
+    cliOptions.addOption("u", true, "Alternate url to oracle.com/otn-pub, or file: url of a local mirror");
     cliOptions.addOption("jce", false, "Also install unlimited jce policy");
     cliOptions.addOption("otnUser", true, "OTN username");
     cliOptions.addOption("otnPassword", true, "OTN password");
     cliOptions.addOption("releases", true, "Alternate url to jdkreleases yaml configuration");
     cliOptions.addOption("mirror", false,
         "Mirror remote storage by only downloading binaries; can be used with -v, -vf, -vt, -t and -a, otherwise will download everything");
-    cliOptions.addOption("threads", true, "Number of threads to run mirror with");
+    cliOptions.addOption("verify", false,
+        "Rehash the images of a mirror in the output dir and report missing or invalid ones; can be used with -v, -vf, -vt, -versions, -t and -a");
+    cliOptions.addOption("serve", true,
+        "Serve the mirror in the output dir over http on the given [host:]port, along with the releases catalog");
+    cliOptions.addOption("threads", true,
+        "Number of threads to run mirror with, or a range like 2-16 to tune it to the throughput achieved; "
+            + "with -serve the number of requests answered at once");
+    cliOptions.addOption("validationThreads", true,
+        "Number of threads checking existing files when mirroring, defaults to the number of processors");
+    cliOptions.addOption("dryRun", false,
+        "With -mirror, print what would be downloaded, checked and linked, with an estimate of the time it takes");
+    cliOptions.addOption("deepVerify", false,
+        "Rehash every existing file when mirroring, instead of trusting those unchanged since they were last verified");
+    cliOptions.addOption("connections", true, "Number of parallel connections to download each binary with");
+    cliOptions.addOption("rateLimit", true, "Maximum total download rate in bytes per second, k, m and g suffixes allowed");
+    cliOptions.addOption("rateLimitHours", true, "Hours of the day the rate limit applies, like 8-18");
+    cliOptions.addOption("hostConnections", true, "Maximum number of concurrent transfers from a single host");
     cliOptions.addOption("vf", true, "When used with -mirror, specifies version range 'from'");
     cliOptions.addOption("vt", true, "When used with -mirror, specifies version range 'to'");
+    cliOptions.addOption("versions", true,
+        "Versions to mirror or list, like 8u151..8u202, 11.0.x, '>=9 <12' or latest-per-major, several separated by commas");
     cliOptions.addOption("s", false, "Silence download messages");
+    cliOptions.addOption("cache", true, "Directory of a download cache shared between runs");
+    cliOptions.addOption("cacheSize", true, "Maximum size of the download cache in megabytes");
+    cliOptions.addOption("stream", false, "Extract tar.gz and zip images while downloading");
     cliOptions.addOption("?", "help", false, "Help");
   }
 
@@ -51,8 +82,10 @@ public class Main {
     CommandLine cli = new PosixParser().parse(cliOptions, args);
 
     if (cli.hasOption("l")) {
+      JdkReleases rels = JdkReleases.get();
       System.out.println("Available JDK versions:");
-      for (JdkRelease r : JdkReleases.get().getReleases()) {
+      for (JdkRelease r : cli.hasOption("versions") ? rels.selectAll(cli.getOptionValue("versions"))
+          : rels.getReleases()) {
         JdkVersion v = r.getVersion();
         System.out.println("  " + v.longBuild() + " / " + v.shortBuild() + (r.isPsu() ? " PSU" : ""));
       }
@@ -67,6 +100,7 @@ public class Main {
     String relDoc = cli.getOptionValue("releases");
 
     boolean mirror = cli.hasOption("mirror");
+    boolean verify = cli.hasOption("verify");
     String v = cli.getOptionValue("v");// "1.8.0_92-b14";
     String[] a = cli.getOptionValues("a");
     String[] t = cli.getOptionValues("t");
@@ -85,6 +119,21 @@ public class Main {
       return;
     }
 
+    if (cli.hasOption("serve")) {
+      String addr = cli.getOptionValue("serve");
+      int colon = addr.lastIndexOf(':');
+      InetSocketAddress address = colon == -1 ? new InetSocketAddress(Integer.parseInt(addr))
+          : new InetSocketAddress(addr.substring(0, colon), Integer.parseInt(addr.substring(colon + 1)));
+      int threads = cli.hasOption("threads") ? Integer.parseInt(cli.getOptionValue("threads"))
+          : MirrorServer.DEFAULT_THREADS;
+      try (MirrorServer server = new MirrorServer(new File(o), address, threads, StdOutput.INSTANCE)) {
+        server.setCatalog(catalog(relDoc));
+        server.start();
+        server.join();
+      }
+      return;
+    }
+
     JdkReleases rels;
     if (relDoc != null) {
       rels = JdkReleases.readFromUrl(relDoc);
@@ -106,71 +155,154 @@ public class Main {
     if (otnp != null) {
       trParams.put(ITransportFactory.PARAM_PASSWORD, otnp);
     }
-    ITransport transport = rels.createTransportFactory().createTransport(trParams);
-
-    if (mirror) {
-      String vf = cli.getOptionValue("vf");
-      String vt = cli.getOptionValue("vt");
-
-      int threads = 1;
-      if (cli.hasOption("threads")) {
-        threads = Integer.parseInt(cli.getOptionValue("threads"));
-      }
-
-      new MirrorRemote(transport, threads, silent)
-          .mirrorRemote(rels, v != null ? v : vf, v != null ? v : vt, arches, t, outDir);
-      return;
+    if (cli.hasOption("connections")) {
+      trParams.put(ITransportFactory.PARAM_CONNECTIONS, cli.getOptionValue("connections"));
     }
-
-    if (v == null) {
-      System.err.println("No version specified");
-      usage();
-      return;
+    if (cli.hasOption("rateLimit")) {
+      trParams.put(ITransportFactory.PARAM_RATE_LIMIT, cli.getOptionValue("rateLimit"));
     }
-
-    Arch arch = null;
-    if (!arches.isEmpty()) {
-      if (arches.size() == 1) {
-        arch = arches.iterator().next();
+    if (cli.hasOption("rateLimitHours")) {
+      trParams.put(ITransportFactory.PARAM_RATE_LIMIT_HOURS, cli.getOptionValue("rateLimitHours"));
+    }
+    if (cli.hasOption("hostConnections")) {
+      trParams.put(ITransportFactory.PARAM_HOST_CONNECTIONS, cli.getOptionValue("hostConnections"));
+    }
+    int threads = 1;
+    int minThreads = Integer.MAX_VALUE;
+    if (mirror && cli.hasOption("threads")) {
+      String th = cli.getOptionValue("threads");
+      int dash = th.indexOf('-');
+      if (dash != -1) {
+        minThreads = Integer.parseInt(th.substring(0, dash).trim());
+        threads = Integer.parseInt(th.substring(dash + 1).trim());
       } else {
-        System.err.println("Only one arch is allowed");
+        threads = Integer.parseInt(th);
       }
     }
-    if (arch == null) {
-      usage();
-      return;
+    if (!trParams.containsKey(ITransportFactory.PARAM_MAX_CONNECTIONS_PER_ROUTE)) {
+      // leave room for every mirror thread to use all of its connections
+      int connections = Integer.parseInt(trParams.getOrDefault(ITransportFactory.PARAM_CONNECTIONS, "1"));
+      trParams.put(ITransportFactory.PARAM_MAX_CONNECTIONS_PER_ROUTE,
+          Integer.toString(Math.max(OracleWebsiteTransport.DEFAULT_MAX_CONNECTIONS_PER_ROUTE, threads * connections)));
     }
 
-    if (t != null && t.length != 1) {
-      System.err.println("Only one type is allowed: " + Arrays.toString(t));
-      usage();
-      return;
+    ArtifactCache cache = null;
+    if (cli.hasOption("cache")) {
+      long cacheSize = ArtifactCache.DEFAULT_MAX_SIZE;
+      if (cli.hasOption("cacheSize")) {
+        cacheSize = Long.parseLong(cli.getOptionValue("cacheSize")) * 1024L * 1024L;
+      }
+      cache = new ArtifactCache(new File(cli.getOptionValue("cache")), cacheSize);
     }
 
-    BinaryType type = null;
-    if (t != null) {
-      type = BinaryType.forName(t[0], null);
-    }
-    if (t != null && type == null) {
-      System.err.println("Release type is not supported: " + t[0]);
-      System.err.print("Avalable release types: " +
-          Arrays.asList(BinaryType.values()).stream().map(at -> at.getName())
-              .collect(Collectors.joining(", ")));
-      usage();
-      return;
-    }
+    ITransportFactory factory = MirrorTransportFactory.isMirror(u) ? new MirrorTransportFactory()
+        : rels.createTransportFactory();
+    try (ITransport transport = factory.createTransport(trParams)) {
+      if (mirror || verify) {
+        String vf = cli.getOptionValue("vf");
+        String vt = cli.getOptionValue("vt");
 
-    JdkRelease rel = rels.select(v);
+        MirrorRemote mr = new MirrorRemote(transport, threads, silent);
+        if (minThreads < threads) {
+          mr.setMinThreads(minThreads);
+        }
+        if (cli.hasOption("hostConnections")) {
+          mr.setHostConnections(Integer.parseInt(cli.getOptionValue("hostConnections")));
+        }
+        if (cli.hasOption("validationThreads")) {
+          mr.setValidationThreads(Integer.parseInt(cli.getOptionValue("validationThreads")));
+        }
+        mr.setDeepVerify(cli.hasOption("deepVerify"));
+        mr.setCache(cache);
+        VersionRange range = cli.hasOption("versions") ? VersionRange.parse(cli.getOptionValue("versions"))
+            : MirrorRemote.range(rels, v != null ? v : vf, v != null ? v : vt);
+        if (verify) {
+          if (mr.verify(rels, range, arches, t, outDir) > 0) {
+            System.exit(1);
+          }
+          return;
+        }
+        if (cli.hasOption("dryRun")) {
+          mr.plan(rels, range, arches, t, outDir).print(StdOutput.INSTANCE, true);
+          return;
+        }
+        mr.mirrorRemote(rels, range, arches, t, outDir);
+        return;
+      }
 
-    JdkGetter jdkGet = new JdkGetter(transport, StdOutput.INSTANCE);
-    jdkGet.setSilent(silent);
+      if (v == null) {
+        System.err.println("No version specified");
+        usage();
+        return;
+      }
 
-    JCE jce = null;
-    if (jceOpt) {
-      jce = rels.getJCE(rel.getVersion());
+      Arch arch = null;
+      if (!arches.isEmpty()) {
+        if (arches.size() == 1) {
+          arch = arches.iterator().next();
+        } else {
+          System.err.println("Only one arch is allowed");
+        }
+      }
+      if (arch == null) {
+        usage();
+        return;
+      }
+
+      if (t != null && t.length != 1) {
+        System.err.println("Only one type is allowed: " + Arrays.toString(t));
+        usage();
+        return;
+      }
+
+      BinaryType type = null;
+      if (t != null) {
+        type = BinaryType.forName(t[0], null);
+      }
+      if (t != null && type == null) {
+        System.err.println("Release type is not supported: " + t[0]);
+        System.err.print("Avalable release types: " +
+            Arrays.asList(BinaryType.values()).stream().map(at -> at.getName())
+                .collect(Collectors.joining(", ")));
+        usage();
+        return;
+      }
+
+      JdkRelease rel = rels.select(v);
+
+      JdkGetter jdkGet = new JdkGetter(transport, StdOutput.INSTANCE);
+      jdkGet.setSilent(silent);
+      jdkGet.setStreamingExtract(cli.hasOption("stream"));
+      jdkGet.setCache(cache);
+
+      JCE jce = null;
+      if (jceOpt) {
+        jce = rels.getJCE(rel.getVersion());
+      }
+
+      jdkGet.get(rel, jce, arch, type, outDir);
     }
+  }
 
-    jdkGet.get(rel, jce, arch, type, outDir);
+  /**
+   * Raw releases catalog for clients of a served mirror, the one given with -releases or the current one,
+   * falling back to the built-in one like {@link JdkReleases#get()} does.
+   */
+  private static byte[] catalog(String relDoc) throws IOException {
+    if (relDoc != null || !"builtin".equals(System.getProperty("io.takari.jdkget.releaseList"))) {
+      String src = relDoc != null ? relDoc : JdkReleases.ORACLE_RELEASES;
+      try (InputStream in = src.contains(":/") ? new URL(src).openStream() : new FileInputStream(src)) {
+        return IOUtils.toByteArray(in);
+      } catch (IOException e) {
+        if (relDoc != null) {
+          throw e;
+        }
+      }
+    }
+    try (InputStream in = JdkReleases.class.getClassLoader()
+        .getResourceAsStream(MirrorServer.CATALOG_PATH.substring(1))) {
+      return IOUtils.toByteArray(in);
+    }
   }
 
   private static void usage() {
@@ -185,12 +317,17 @@ public class Main {
 
     System.out.println("\nExamples:");
     System.out.println("  List versions:");
-    System.out.println("    jdkget-" + ver + ".jar -l");
+    System.out.println("    jdkget-" + ver + ".jar -l [-versions <range>]");
     System.out.println("  Download and extract:");
     System.out.println("    jdkget-" + ver + ".jar -o <outputDir> -v <jdkVersion> [-t <type>] [-a <arch>]");
+    System.out.println("  Serve mirror:");
+    System.out.println("    jdkget-" + ver + ".jar -serve [<host>:]<port> -o <mirrorDir> [-threads <n>] [-releases <url>]");
+    System.out.println("  Verify mirror:");
+    System.out.println("    jdkget-" + ver
+        + ".jar -verify -o <mirrorDir> [-t <type1> ... -t <typeN>] [-versions <range>] [-a <arch>] [-validationThreads <n>]");
     System.out.println("  Mirror remote:");
     System.out.println("    jdkget-" + ver
-        + ".jar -mirror -o <outputDir> [-t <type1> ... -t <typeN>] [-v <jdkVersion>] [-vf <fromVersion>] [-vt <toVersion>] [-a <arch>]");
+        + ".jar -mirror -o <outputDir> [-t <type1> ... -t <typeN>] [-v <jdkVersion>] [-vf <fromVersion>] [-vt <toVersion>] [-versions <range>] [-a <arch>] [-dryRun]");
   }
 
   private static Set<Arch> parseArches(String[] as) {
@@ -0,0 +1,346 @@
+package io.takari.jdkget;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.takari.jdkget.mirror.MirrorManifest;
+import io.takari.jdkget.model.BinaryType;
+import io.takari.jdkget.model.JCE;
+import io.takari.jdkget.model.JdkBinary;
+import io.takari.jdkget.model.JdkRelease;
+import io.takari.jdkget.model.JdkReleases;
+import io.takari.jdkget.model.JdkVersion;
+import io.takari.jdkget.model.VersionRange;
+
+/**
+ * What a mirror run is going to do: the binaries the filters select, compared against the mirror directory
+ * and its manifest. {@link MirrorRemote#mirrorRemote(MirrorPlan)} carries out exactly these actions, so a
+ * plan printed for a dry run is the plan a real run follows.
+ */
+public class MirrorPlan {
+
+  public enum Action {
+    /** Not in the mirror. */
+    DOWNLOAD,
+    /** In the mirror, but has to be rehashed; downloaded again if it is invalid. */
+    CHECK,
+    /** In the mirror and trusted by the manifest. */
+    UP_TO_DATE,
+    /** Another path of a blob the plan gets anyway, hard linked to it. */
+    LINK
+  }
+
+  public static class Item {
+    final JdkBinary bin;
+    final BinaryType type;
+    final String desc;
+    final File out;
+    Action action;
+    // other paths of the same blob, linked to out once it is valid
+    final List<Item> duplicates = new ArrayList<>();
+
+    Item(JdkBinary bin, BinaryType type, String desc, File out) {
+      this.bin = bin;
+      this.type = type;
+      this.desc = desc;
+      this.out = out;
+    }
+
+    public JdkBinary getBinary() {
+      return bin;
+    }
+
+    public String getDescription() {
+      return desc;
+    }
+
+    public File getFile() {
+      return out;
+    }
+
+    public Action getAction() {
+      return action;
+    }
+
+    public List<Item> getDuplicates() {
+      return Collections.unmodifiableList(duplicates);
+    }
+  }
+
+  private final File outDir;
+  private final MirrorManifest manifest;
+  private final List<JCE> jces;
+  private final List<Item> items;
+  private final int validationThreads;
+
+  private MirrorPlan(File outDir, MirrorManifest manifest, List<JCE> jces, List<Item> items, int validationThreads) {
+    this.outDir = outDir;
+    this.manifest = manifest;
+    this.jces = jces;
+    this.items = items;
+    this.validationThreads = validationThreads;
+  }
+
+  /**
+   * Plans mirroring the selected binaries into outDir. Existing files are rehashed unless the manifest
+   * trusts them, or always with deepVerify.
+   */
+  static MirrorPlan create(JdkReleases rels, VersionRange versions, Set<Arch> arch, String[] types, File outDir,
+      boolean deepVerify, int validationThreads) {
+    List<JCE> jces = new ArrayList<>();
+    for (String v : Arrays.asList("8", "7", "6")) {
+      JCE jce = rels.getJCE(JdkVersion.parse(v));
+      if (jce != null && !new File(outDir, jce.getPath()).exists()) {
+        jces.add(jce);
+      }
+    }
+
+    MirrorManifest manifest = MirrorManifest.load(outDir);
+    List<Item> items = dedup(select(rels, versions, arch, types, outDir));
+    for (Item i : items) {
+      if (!i.out.exists()) {
+        i.action = Action.DOWNLOAD;
+      } else if (!deepVerify && manifest.isTrusted(i.bin, i.out)) {
+        i.action = Action.UP_TO_DATE;
+      } else {
+        i.action = Action.CHECK;
+      }
+      for (Item d : i.duplicates) {
+        d.action = i.action != Action.DOWNLOAD && isSameFile(d.out, i.out) ? Action.UP_TO_DATE : Action.LINK;
+      }
+    }
+    return new MirrorPlan(outDir, manifest, jces, items, validationThreads);
+  }
+
+  private static boolean isSameFile(File a, File b) {
+    try {
+      return a.exists() && Files.isSameFile(a.toPath(), b.toPath());
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * The binaries matching the filters, newest release first, without looking at the mirror.
+   */
+  static List<Item> select(JdkReleases rels, VersionRange versions, Set<Arch> arch, String[] types, File outDir) {
+    List<Item> selected = new ArrayList<>();
+    for (JdkRelease rel : versions.select(rels)) {
+      JdkVersion v = rel.getVersion();
+
+      Set<BinaryType> binTypes = rel.getTypes(BinaryType.forNames(types));
+      if (binTypes == null) {
+        continue;
+      }
+
+      for (BinaryType t : binTypes) {
+        Set<Arch> reqArches = EnumSet.copyOf(arch);
+        if (reqArches.isEmpty()) {
+          reqArches.addAll(rel.getArchs(t));
+        } else {
+          reqArches.retainAll(rel.getArchs(t));
+        }
+        for (Arch a : reqArches) {
+          for (JdkBinary bin : rel.getBinaries(t, a)) {
+            String desc = t + "-" + v.shortBuild() + " (" + a.name() + ")";
+            selected.add(new Item(bin, t, desc, new File(outDir, bin.getPath()).getAbsoluteFile()));
+          }
+        }
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Folds binaries the catalog lists under several paths, recognized by sha256 and size, into the
+   * {@link Item#duplicates} of one of them, preferring one already in the mirror.
+   */
+  static List<Item> dedup(List<Item> selected) {
+    List<Item> ordered = new ArrayList<>(selected.size());
+    for (Item s : selected) {
+      if (s.out.exists()) {
+        ordered.add(s);
+      }
+    }
+    for (Item s : selected) {
+      if (!s.out.exists()) {
+        ordered.add(s);
+      }
+    }
+
+    Map<String, Item> blobs = new HashMap<>();
+    List<Item> unique = new ArrayList<>();
+    for (Item s : ordered) {
+      String sha256 = s.bin.getSha256();
+      Item first = sha256 == null ? null : blobs.putIfAbsent(sha256 + "/" + s.bin.getSize(), s);
+      if (first == null) {
+        unique.add(s);
+      } else if (!first.out.equals(s.out)) {
+        first.duplicates.add(s);
+      }
+    }
+    return unique;
+  }
+
+  public File getOutDir() {
+    return outDir;
+  }
+
+  MirrorManifest getManifest() {
+    return manifest;
+  }
+
+  int getValidationThreads() {
+    return validationThreads;
+  }
+
+  /**
+   * JCE policy files missing from the mirror, downloaded before the binaries.
+   */
+  public List<JCE> getJces() {
+    return jces;
+  }
+
+  /**
+   * One item per distinct blob, with the other paths of it as its duplicates.
+   */
+  public List<Item> getItems() {
+    return items;
+  }
+
+  public int count(Action action) {
+    int n = 0;
+    for (Item i : items) {
+      n += i.action == action ? 1 : 0;
+      for (Item d : i.duplicates) {
+        n += d.action == action ? 1 : 0;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Bytes of the binaries to download, with catalog sizes where known and {@link MirrorRemote#estimateSize}
+   * guesses otherwise.
+   */
+  public long getDownloadBytes() {
+    long bytes = 0;
+    for (Item i : items) {
+      if (i.action == Action.DOWNLOAD) {
+        bytes += MirrorRemote.estimateSize(i.bin, i.type);
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Number of binaries to download whose size the catalog does not give.
+   */
+  public int getUnknownSizes() {
+    int n = 0;
+    for (Item i : items) {
+      if (i.action == Action.DOWNLOAD && i.bin.getSize() <= 0) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  public long getCheckBytes() {
+    long bytes = 0;
+    for (Item i : items) {
+      if (i.action == Action.CHECK) {
+        bytes += i.out.length();
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Milliseconds the run is expected to take at the rates the manifest recorded, -1 if a rate it needs is
+   * not known yet. Downloads and checks run side by side, so the longer of the two counts.
+   */
+  public long estimateMillis() {
+    double seconds = 0;
+    long download = getDownloadBytes();
+    if (download > 0) {
+      if (manifest.getDownloadRate() <= 0) {
+        return -1;
+      }
+      seconds = download / manifest.getDownloadRate();
+    }
+    long check = getCheckBytes();
+    if (check > 0) {
+      if (manifest.getHashRate() <= 0) {
+        return -1;
+      }
+      int checkThreads = Math.min(Math.min(validationThreads, count(Action.CHECK)),
+          Runtime.getRuntime().availableProcessors());
+      seconds = Math.max(seconds, check / (manifest.getHashRate() * Math.max(1, checkThreads)));
+    }
+    return (long) (seconds * 1000);
+  }
+
+  /**
+   * Prints the summary, and with details every action.
+   */
+  public void print(IOutput output, boolean details) {
+    if (details) {
+      for (JCE jce : jces) {
+        output.info("  download  jce " + jce.getMajorVersion() + " " + jce.getPath());
+      }
+      for (Item i : items) {
+        if (i.action != Action.UP_TO_DATE) {
+          output.info(line(i, null));
+        }
+        for (Item d : i.duplicates) {
+          if (d.action != Action.UP_TO_DATE) {
+            output.info(line(d, i));
+          }
+        }
+      }
+    }
+
+    output.info(String.format("** Mirror plan for %s: %d to download, %s%s; %d to check, %s; %d to link; %d up to date",
+        outDir, count(Action.DOWNLOAD) + jces.size(), mb(getDownloadBytes()),
+        getUnknownSizes() > 0 ? " (" + getUnknownSizes() + " of unknown size estimated)" : "", count(Action.CHECK),
+        mb(getCheckBytes()), count(Action.LINK), count(Action.UP_TO_DATE)));
+
+    long eta = estimateMillis();
+    if (eta == -1) {
+      String missing = manifest.getDownloadRate() <= 0 && getDownloadBytes() > 0 ? "download" : "hashing";
+      output.info("** No " + missing + " rate measured in this mirror yet, cannot estimate the time");
+    } else {
+      output.info(String.format("** Estimated time %s at %s/s download and %s/s hashing per thread",
+          duration(eta), mb((long) manifest.getDownloadRate()), mb((long) manifest.getHashRate())));
+    }
+  }
+
+  private static String line(Item i, Item linkTo) {
+    String action = String.format("  %-9s ", i.action.name().toLowerCase().replace('_', ' '));
+    if (linkTo != null) {
+      return action + i.desc + " " + i.bin.getPath() + " -> " + linkTo.bin.getPath();
+    }
+    String size = i.action == Action.CHECK ? mb(i.out.length())
+        : i.bin.getSize() > 0 ? mb(i.bin.getSize()) : "~" + mb(MirrorRemote.estimateSize(i.bin, i.type));
+    return action + i.desc + " " + i.bin.getPath() + " " + size;
+  }
+
+  private static String mb(long bytes) {
+    return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+  }
+
+  private static String duration(long millis) {
+    long s = (millis + 999) / 1000;
+    return String.format("%d:%02d:%02d", s / 3600, s / 60 % 60, s % 60);
+  }
+}
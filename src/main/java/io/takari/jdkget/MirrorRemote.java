@@ -2,28 +2,46 @@ package io.takari.jdkget;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.io.FileUtils;
 
+import io.takari.jdkget.MirrorPlan.Action;
+import io.takari.jdkget.MirrorPlan.Item;
+import io.takari.jdkget.mirror.MirrorManifest;
 import io.takari.jdkget.model.JCE;
 import io.takari.jdkget.model.BinaryType;
 import io.takari.jdkget.model.JdkBinary;
-import io.takari.jdkget.model.JdkRelease;
 import io.takari.jdkget.model.JdkReleases;
 import io.takari.jdkget.model.JdkVersion;
+import io.takari.jdkget.model.VersionRange;
 
 public class MirrorRemote {
 
+  public static final long TUNE_INTERVAL = 10L * 1000L;
+  static final long MIN_RATE_SAMPLE = 1024L * 1024L;
+
   private final ITransport transport;
   private final int threads;
   private final boolean silent;
+  private int minThreads = Integer.MAX_VALUE;
+  private int validationThreads;
+  private int hostConnections;
+  private boolean deepVerify;
+  private ArtifactCache cache;
+  private RetryPolicy retryPolicy = new RetryPolicy();
 
   public MirrorRemote(ITransport transport, int threads, boolean silent) {
     this.transport = transport;
@@ -31,98 +49,372 @@ public class MirrorRemote {
     this.silent = silent;
   }
 
+  /**
+   * Tunes the number of concurrent downloads between minThreads and the number of threads the mirror was
+   * created with, based on the throughput and failures of every {@link #TUNE_INTERVAL}.
+   */
+  public void setMinThreads(int minThreads) {
+    this.minThreads = Math.max(1, minThreads);
+  }
+
+  /**
+   * Number of existing files checked concurrently, independently of the download threads. Defaults to
+   * what the storage of the mirror can serve, see {@link BulkVerifier#defaultThreads(File)}.
+   */
+  public void setValidationThreads(int validationThreads) {
+    this.validationThreads = Math.max(1, validationThreads);
+  }
+
+  /**
+   * Maximum number of concurrent downloads from a single host, 0 for no limit.
+   */
+  public void setHostConnections(int hostConnections) {
+    this.hostConnections = hostConnections;
+  }
+
+  /**
+   * Rehashes every existing file, even those the mirror manifest says were verified and not changed since.
+   */
+  public void setDeepVerify(boolean deepVerify) {
+    this.deepVerify = deepVerify;
+  }
+
+  public void setCache(ArtifactCache cache) {
+    this.cache = cache;
+  }
+
+  /**
+   * Policy shared by all workers, so that a failing host trips one circuit breaker for all of them.
+   */
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
   public void mirrorRemote(JdkReleases rels, String vfrom, String vto, Set<Arch> arch, String[] types, File outDir)
       throws IOException, InterruptedException {
+    mirrorRemote(rels, range(rels, vfrom, vto), arch, types, outDir);
+  }
+
+  /**
+   * The versions from vfrom to the release vto selects, either end may be null for no bound.
+   */
+  public static VersionRange range(JdkReleases rels, String vfrom, String vto) {
     JdkVersion vf = vfrom != null ? JdkVersion.parse(vfrom) : null;
     JdkVersion vt = vto != null ? rels.select(JdkVersion.parse(vto)).getVersion() : null;
+    return VersionRange.between(vf, vt);
+  }
 
+  public void mirrorRemote(JdkReleases rels, VersionRange versions, Set<Arch> arch, String[] types, File outDir)
+      throws IOException, InterruptedException {
+    MirrorPlan plan = plan(rels, versions, arch, types, outDir);
+    plan.print(StdOutput.INSTANCE, false);
+    mirrorRemote(plan);
+  }
 
-    for (String v : Arrays.asList("8", "7", "6")) {
-      JdkVersion version = JdkVersion.parse(v);
-      JCE jce = rels.getJCE(version);
-      if (jce == null) {
-        continue;
-      }
+  /**
+   * Compares the selected binaries against the mirror without changing anything.
+   */
+  public MirrorPlan plan(JdkReleases rels, VersionRange versions, Set<Arch> arch, String[] types, File outDir) {
+    return MirrorPlan.create(rels, versions, arch, types, outDir, deepVerify, validationThreads(outDir));
+  }
+
+  /**
+   * Carries out a plan, and records the download and hashing rates it achieved for estimating later ones.
+   */
+  public void mirrorRemote(MirrorPlan plan) throws IOException, InterruptedException {
+    File outDir = plan.getOutDir();
+    for (JCE jce : plan.getJces()) {
       File jceFile = new File(outDir, jce.getPath());
-      if (!jceFile.exists()) {
-        CachingOutput output = new CachingOutput();
-        JdkGetter context = new JdkGetter(transport, output);
-        context.setSilent(silent);
+      CachingOutput output = new CachingOutput();
+      JdkGetter context = new JdkGetter(transport, output);
+      context.setSilent(silent);
+      context.setRetryPolicy(retryPolicy);
 
-        jceFile.getParentFile().mkdirs();
-        output.info("** Downloading jce policy files to " + jceFile);
-        transport.downloadJce(context, jce, jceFile);
-        output.output(System.out);
-      }
+      jceFile.getParentFile().mkdirs();
+      output.info("** Downloading jce policy files to " + jceFile);
+      transport.downloadJce(context, jce, jceFile);
+      output.output(System.out);
+    }
+
+    Run run = new Run(plan.getManifest(),
+        new MirrorScheduler(threads, plan.getValidationThreads(), hostConnections));
+    if (minThreads < threads) {
+      Throttle throttle = transport.getThrottle();
+      run.scheduler.tune(new ConcurrencyController(minThreads, threads), throttle::getTransferred, TUNE_INTERVAL,
+          StdOutput.INSTANCE);
+    }
+    for (Item i : plan.getItems()) {
+      mirrorRemoteDownloading(i, run);
+    }
+    try {
+      run.scheduler.await();
+    } finally {
+      run.recordRates();
+      run.manifest.save();
+    }
+  }
+
+  /**
+   * State of one mirror run shared by its tasks.
+   */
+  private static class Run {
+    final MirrorManifest manifest;
+    final MirrorScheduler scheduler;
+    final AtomicLong downloaded = new AtomicLong();
+    final AtomicLong firstDownload = new AtomicLong(Long.MAX_VALUE);
+    final AtomicLong lastDownload = new AtomicLong(Long.MIN_VALUE);
+    final AtomicLong hashed = new AtomicLong();
+    final AtomicLong hashNanos = new AtomicLong();
+
+    Run(MirrorManifest manifest, MirrorScheduler scheduler) {
+      this.manifest = manifest;
+      this.scheduler = scheduler;
+    }
+
+    void downloaded(long bytes, long start, long end) {
+      downloaded.addAndGet(bytes);
+      firstDownload.accumulateAndGet(start, Math::min);
+      lastDownload.accumulateAndGet(end, Math::max);
+    }
+
+    void hashed(long bytes, long nanos) {
+      hashed.addAndGet(bytes);
+      hashNanos.addAndGet(nanos);
     }
 
-    ExecutorService ex = Executors.newFixedThreadPool(threads);
-    for (JdkRelease rel : rels.getReleases()) {
-      JdkVersion v = rel.getVersion();
-      if (vt != null && vt.compareTo(v) < 0) {
-        continue;
+    void recordRates() {
+      // too little data says more about latency than about the rate
+      if (downloaded.get() >= MIN_RATE_SAMPLE) {
+        manifest.recordDownloadRate(downloaded.get() * 1e9 / Math.max(1, lastDownload.get() - firstDownload.get()));
       }
-      if (vf != null && v.compareTo(vf) < 0) {
-        break;
+      if (hashed.get() >= MIN_RATE_SAMPLE) {
+        manifest.recordHashRate(hashed.get() * 1e9 / Math.max(1, hashNanos.get()));
       }
+    }
+  }
 
-      Set<BinaryType> binTypes = rel.getTypes(BinaryType.forNames(types));
-      if (binTypes == null) {
-        continue;
-      }
+  /**
+   * Rehashes the selected binaries found in the mirror, all of them regardless of the mirror manifest, and
+   * records the valid ones in it. Returns the number of binaries that are missing or invalid.
+   */
+  public int verify(JdkReleases rels, VersionRange versions, Set<Arch> arch, String[] types, File outDir)
+      throws IOException, InterruptedException {
+    MirrorManifest manifest = MirrorManifest.load(outDir);
+    List<Item> selected = MirrorPlan.select(rels, versions, arch, types, outDir);
+    List<Future<Digests>> digests = new ArrayList<>();
 
-      for (BinaryType t : binTypes) {
-        Set<Arch> reqArches = EnumSet.copyOf(arch);
-        if (reqArches.isEmpty()) {
-          reqArches.addAll(rel.getArchs(t));
-        } else {
-          reqArches.retainAll(rel.getArchs(t));
+    long start = System.currentTimeMillis();
+    long bytes = 0;
+    int missing = 0;
+    int invalid = 0;
+    try (BulkVerifier verifier = new BulkVerifier(validationThreads(outDir))) {
+      // hard linked duplicates are read once
+      Map<Object, Future<Digests>> files = new HashMap<>();
+      for (Item s : selected) {
+        if (!s.out.exists()) {
+          digests.add(null);
+          continue;
+        }
+        Object fileKey = Files.readAttributes(s.out.toPath(), BasicFileAttributes.class).fileKey();
+        Object key = fileKey == null ? null
+            : Arrays.asList(fileKey, s.bin.getMd5() != null, s.bin.getSha256() != null);
+        Future<Digests> f = key == null ? null : files.get(key);
+        if (f == null) {
+          f = verifier.digests(s.out, s.bin);
+          if (key != null) {
+            files.put(key, f);
+          }
+        }
+        digests.add(f);
+      }
+      for (int i = 0; i < selected.size(); i++) {
+        Item s = selected.get(i);
+        Future<Digests> f = digests.get(i);
+        if (f == null) {
+          missing++;
+          StdOutput.INSTANCE.error("** Missing " + s.desc + " " + s.out);
+          continue;
         }
-        if (reqArches.isEmpty()) {
+        Digests d;
+        try {
+          d = f.get();
+        } catch (ExecutionException e) {
+          invalid++;
+          manifest.remove(s.bin);
+          StdOutput.INSTANCE.error("** Error reading " + s.desc + " " + s.out, e.getCause());
           continue;
         }
-        mirrorRemoteDownloading(outDir, rel, v, reqArches, t, ex);
+        bytes += d.getSize();
+        if (d.validate(s.bin, StdOutput.INSTANCE)) {
+          manifest.verified(s.bin, s.out);
+          StdOutput.INSTANCE.info("** Valid " + s.desc + " " + s.out);
+        } else {
+          invalid++;
+          manifest.remove(s.bin);
+          StdOutput.INSTANCE.error("** Invalid " + s.desc + " " + s.out);
+        }
       }
+    } finally {
+      manifest.save();
     }
-    ex.shutdown();
-    ex.awaitTermination(7, TimeUnit.DAYS);
+
+    double secs = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+    StdOutput.INSTANCE.info(String.format("** Verified %d files, %.1f MB in %.1f s (%.1f MB/s), %d invalid, %d missing",
+        selected.size() - missing, bytes / 1048576.0, secs, bytes / 1048576.0 / secs, invalid, missing));
+    return missing + invalid;
+  }
+
+  private int validationThreads(File outDir) {
+    return validationThreads > 0 ? validationThreads : BulkVerifier.defaultThreads(outDir);
   }
 
-  private void mirrorRemoteDownloading(File outDir, JdkRelease rel, JdkVersion v, Collection<Arch> arches, BinaryType type,
-      ExecutorService ex) throws IOException, InterruptedException {
-    for (Arch a : arches) {
-      for (JdkBinary bin : rel.getBinaries(type, a)) {
+  private void mirrorRemoteDownloading(Item s, Run run) {
+    JdkBinary bin = s.bin;
+    String desc = s.desc;
+    File out = s.out;
+    MirrorManifest manifest = run.manifest;
+    MirrorScheduler scheduler = run.scheduler;
+    if (s.action == Action.DOWNLOAD) {
+      scheduler.download(transport.getHost(bin), estimateSize(bin, s.type), () -> download(s, run));
+      return;
+    }
+    if (s.action == Action.UP_TO_DATE) {
+      if (!s.duplicates.isEmpty()) {
+        CachingOutput output = new CachingOutput();
+        linkDuplicates(s, manifest, output);
+        output.output(System.out);
+      }
+      return;
+    }
 
-        ex.submit(() -> {
-          CachingOutput output = new CachingOutput();
-          JdkGetter ctx = new JdkGetter(transport, output);
-          ctx.setSilent(silent || threads > 1);
-          try {
-            File out = new File(outDir, bin.getPath()).getAbsoluteFile();
-            if (out.exists()) {
-              output.info("** Checking " + type + "-" + v.shortBuild() + " (" + a.name() + ") in " + out);
-              if (transport.validate(ctx, bin, out)) {
-                return;
-              } else {
-                ctx.getLog().info("Existing file failed validation, deleting");
-                FileUtils.forceDelete(out);
-              }
-            }
-            output.info("** Downloading " + type + "-" + v.shortBuild() + " (" + a.name() + ") to " + out);
-            FileUtils.forceMkdir(out.getParentFile());
-
-            transport.downloadJdk(ctx, bin, out);
-            if (!transport.validate(ctx, bin, out)) {
-              ctx.getLog().error("Invalid image file " + out);
-            }
-          } catch (Exception e) {
-            output.error("Error downloading", e);
-          } finally {
-            output.output(System.out);
+    scheduler.validate(() -> {
+      CachingOutput output = new CachingOutput();
+      JdkGetter ctx = context(output);
+      try {
+        output.info("** Checking " + desc + " in " + out);
+        long start = System.nanoTime();
+        boolean valid = transport.validate(ctx, bin, out);
+        run.hashed(out.length(), System.nanoTime() - start);
+        if (valid) {
+          manifest.verified(bin, out);
+          linkDuplicates(s, manifest, output);
+          return;
+        }
+        manifest.remove(bin);
+        long size = out.length();
+        ctx.getLog().info("Existing file failed validation, deleting");
+        FileUtils.forceDelete(out);
+        scheduler.download(transport.getHost(bin), size, () -> download(s, run));
+      } catch (Exception e) {
+        output.error("Error checking", e);
+      } finally {
+        output.output(System.out);
+      }
+    });
+  }
+
+  private JdkGetter context(IOutput output) {
+    JdkGetter ctx = new JdkGetter(transport, output);
+    ctx.setSilent(silent || threads > 1);
+    ctx.setCache(cache);
+    ctx.setRetryPolicy(retryPolicy);
+    return ctx;
+  }
+
+  private void download(Item s, Run run) throws IOException {
+    MirrorManifest manifest = run.manifest;
+    JdkBinary bin = s.bin;
+    String desc = s.desc;
+    File out = s.out;
+    CachingOutput output = new CachingOutput();
+    JdkGetter ctx = context(output);
+    boolean ok = false;
+    try {
+      output.info("** Downloading " + desc + " to " + out);
+      FileUtils.forceMkdir(out.getParentFile());
+      if (ctx.fetchCached(bin, out)) {
+        ok = true;
+      } else {
+        long start = System.nanoTime();
+        transport.downloadJdk(ctx, bin, out);
+        run.downloaded(out.length(), start, System.nanoTime());
+        if (!transport.validate(ctx, bin, out)) {
+          ctx.getLog().error("Invalid image file " + out);
+        } else {
+          if (cache != null) {
+            cache.put(bin, out, ctx.getLog());
           }
-        });
+          ok = true;
+        }
+      }
+      if (ok) {
+        manifest.verified(bin, out);
+        linkDuplicates(s, manifest, output);
+      }
+    } catch (Exception e) {
+      output.error("Error downloading", e);
+    } finally {
+      if (!ok && !s.duplicates.isEmpty()) {
+        // another path of the same blob may still be available, this one gets linked to it
+        Item next = s.duplicates.remove(0);
+        next.duplicates.addAll(s.duplicates);
+        next.duplicates.add(s);
+        output.info("Trying " + next.desc + " instead");
+        run.scheduler.download(transport.getHost(next.bin), estimateSize(next.bin, next.type),
+            () -> download(next, run));
+      }
+      output.output(System.out);
+    }
+    if (!ok) {
+      // already reported, tells the scheduler the download failed
+      throw new IOException("Failed to mirror " + desc);
+    }
+  }
 
+  /**
+   * Makes the other paths of a valid blob hard links to it, or copies where the file system has no links.
+   * Paths that already are links to it are left alone.
+   */
+  private static void linkDuplicates(Item s, MirrorManifest manifest, IOutput output) {
+    for (Item d : s.duplicates) {
+      try {
+        if (d.out.exists() && Files.isSameFile(d.out.toPath(), s.out.toPath())) {
+          manifest.verified(d.bin, d.out);
+          continue;
+        }
+        output.info("** Linking " + d.desc + " to " + s.out);
+        FileUtils.forceMkdir(d.out.getParentFile());
+        // not the .part name, that is a resumable download of the path the transport may still pick up
+        File tmp = new File(d.out.getParentFile(), "." + d.out.getName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+          try {
+            Files.createLink(tmp.toPath(), s.out.toPath());
+          } catch (IOException | UnsupportedOperationException e) {
+            Util.copyFile(s.out, tmp);
+          }
+          Files.move(tmp.toPath(), d.out.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+          Files.deleteIfExists(tmp.toPath());
+        }
+        manifest.verified(d.bin, d.out);
+      } catch (Exception e) {
+        manifest.remove(d.bin);
+        output.error("Error linking " + d.desc, e);
       }
     }
   }
+
+  /**
+   * The size of the binary if the catalog has it, otherwise a rough guess good enough to order downloads:
+   * full JDKs are larger than JREs, and images grew with every major version.
+   */
+  static long estimateSize(JdkBinary bin, BinaryType type) {
+    if (bin.getSize() > 0) {
+      return bin.getSize();
+    }
+    long mb = 1024L * 1024L;
+    long base = type == BinaryType.JDK ? 180 * mb : 70 * mb;
+    int major = bin.getRelease() == null ? 8 : bin.getRelease().getVersion().major;
+    return major >= 9 ? base * 3 / 2 : major == 8 ? base : base / 2;
+  }
 }
@@ -0,0 +1,263 @@
+package io.takari.jdkget;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs the work of a mirror run. Checks of existing files go to their own pool, so they are never stuck
+ * behind downloads. Downloads are handed out largest first, which keeps a big image queued last from
+ * stretching the run, and a worker skips over downloads from hosts that already have as many transfers
+ * as they are allowed. With a {@link ConcurrencyController} the number of concurrent downloads is retuned
+ * after every sampling window, between the controller's bounds.
+ */
+class MirrorScheduler {
+
+  interface Task {
+    void run() throws Exception;
+  }
+
+  private static class Download {
+    final String host;
+    final long size;
+    final long seq;
+    final Task task;
+
+    Download(String host, long size, long seq, Task task) {
+      this.host = host;
+      this.size = size;
+      this.seq = seq;
+      this.task = task;
+    }
+  }
+
+  private static final Comparator<Download> LARGEST_FIRST =
+      Comparator.<Download>comparingLong(d -> -d.size).thenComparingLong(d -> d.seq);
+
+  private final int hostConnections;
+  private final ExecutorService validators;
+  private final Thread[] workers;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private final TreeSet<Download> pending = new TreeSet<>(LARGEST_FIRST);
+  private final Map<String, Integer> active = new HashMap<>();
+  private long seq;
+  private int validating;
+  private boolean closed;
+  private int limit;
+  private int running;
+  private int failures;
+  private Thread tuner;
+
+  /**
+   * @param threads number of concurrent downloads
+   * @param validationThreads number of concurrent checks of existing files
+   * @param hostConnections concurrent downloads per host, 0 for no limit
+   */
+  MirrorScheduler(int threads, int validationThreads, int hostConnections) {
+    this.hostConnections = hostConnections;
+    this.limit = threads;
+
+    AtomicInteger n = new AtomicInteger();
+    this.validators = Executors.newFixedThreadPool(validationThreads, r -> {
+      Thread t = new Thread(r, "jdkget-mirror-validate-" + n.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+
+    this.workers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      workers[i] = new Thread(this::work, "jdkget-mirror-" + (i + 1));
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+  }
+
+  /**
+   * Lets the controller set the number of concurrent downloads every interval, from the bytes per second
+   * counted by transferred and the downloads that failed, and logs the level it picks.
+   */
+  void tune(ConcurrencyController controller, LongSupplier transferred, long interval, IOutput log) {
+    setLimit(controller.getLimit());
+    tuner = new Thread(() -> {
+      long bytes = transferred.getAsLong();
+      long time = System.nanoTime();
+      int windows = 0;
+      try {
+        while (true) {
+          Thread.sleep(interval);
+          long b = transferred.getAsLong();
+          long t = System.nanoTime();
+          double throughput = (b - bytes) * 1e9 / Math.max(1, t - time);
+          bytes = b;
+          time = t;
+
+          int failed;
+          boolean saturated;
+          lock.lock();
+          try {
+            failed = failures;
+            failures = 0;
+            saturated = running >= limit;
+          } finally {
+            lock.unlock();
+          }
+
+          int before = controller.getLimit();
+          int after = controller.update(throughput, failed, saturated);
+          setLimit(after);
+          if (after != before || ++windows % 6 == 0) {
+            log.info(String.format("** Mirror concurrency %d%s, %.1f MB/s, %d failed", after,
+                after != before ? " (was " + before + ")" : "", throughput / (1024 * 1024), failed));
+          }
+        }
+      } catch (InterruptedException e) {
+        // done
+      }
+    }, "jdkget-mirror-tuner");
+    tuner.setDaemon(true);
+    tuner.start();
+  }
+
+  private void setLimit(int limit) {
+    lock.lock();
+    try {
+      this.limit = Math.max(1, Math.min(workers.length, limit));
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Queues a download of the given, possibly estimated, size from a host, null if not known.
+   */
+  void download(String host, long size, Task task) {
+    lock.lock();
+    try {
+      pending.add(new Download(host, size, seq++, task));
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Runs a check on the validation pool, it may queue a download if the check fails.
+   */
+  void validate(Task task) {
+    lock.lock();
+    try {
+      validating++;
+    } finally {
+      lock.unlock();
+    }
+    validators.execute(() -> {
+      try {
+        task.run();
+      } catch (Exception e) {
+        // tasks report their own errors
+      } finally {
+        lock.lock();
+        try {
+          validating--;
+          changed.signalAll();
+        } finally {
+          lock.unlock();
+        }
+      }
+    });
+  }
+
+  /**
+   * Waits for all checks and downloads to finish; no more work can be added afterwards.
+   */
+  void await() throws InterruptedException {
+    lock.lock();
+    try {
+      closed = true;
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    try {
+      for (Thread w : workers) {
+        w.join();
+      }
+    } finally {
+      if (tuner != null) {
+        tuner.interrupt();
+      }
+      validators.shutdownNow();
+      validators.awaitTermination(1, TimeUnit.MINUTES);
+      for (Thread w : workers) {
+        w.interrupt();
+      }
+    }
+  }
+
+  private void work() {
+    Download d;
+    while ((d = next()) != null) {
+      boolean failed = true;
+      try {
+        d.task.run();
+        failed = false;
+      } catch (Exception e) {
+        // tasks report their own errors
+      } finally {
+        done(d, failed);
+      }
+    }
+  }
+
+  private Download next() {
+    lock.lock();
+    try {
+      while (true) {
+        for (Iterator<Download> it = pending.iterator(); running < limit && it.hasNext();) {
+          Download d = it.next();
+          int a = active.getOrDefault(d.host, 0);
+          if (d.host == null || hostConnections <= 0 || a < hostConnections) {
+            it.remove();
+            active.put(d.host, a + 1);
+            running++;
+            return d;
+          }
+        }
+        if (closed && validating == 0 && pending.isEmpty()) {
+          return null;
+        }
+        changed.await();
+      }
+    } catch (InterruptedException e) {
+      return null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void done(Download d, boolean failed) {
+    lock.lock();
+    try {
+      active.merge(d.host, -1, Integer::sum);
+      running--;
+      if (failed) {
+        failures++;
+      }
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+}
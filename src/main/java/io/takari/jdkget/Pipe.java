@@ -0,0 +1,117 @@
+package io.takari.jdkget;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Bounded in-memory pipe between a producing and a consuming thread. Unlike
+ * {@link java.io.PipedInputStream} it does not care which threads write, so a transport may feed it
+ * from its own worker threads.
+ */
+class Pipe {
+
+  private final byte[] buf;
+  private int head;
+  private int count;
+  private boolean writerClosed;
+  private boolean readerClosed;
+
+  final InputStream source = new InputStream() {
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return Pipe.this.read(b, off, len);
+    }
+
+    @Override
+    public void close() {
+      closeReader();
+    }
+  };
+
+  final OutputStream sink = new OutputStream() {
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      Pipe.this.write(b, off, len);
+    }
+
+    @Override
+    public void close() {
+      closeWriter();
+    }
+  };
+
+  Pipe(int size) {
+    this.buf = new byte[size];
+  }
+
+  private synchronized int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (count == 0) {
+      if (writerClosed || readerClosed) {
+        return -1;
+      }
+      await();
+    }
+    int l = Math.min(len, Math.min(count, buf.length - head));
+    System.arraycopy(buf, head, b, off, l);
+    head = (head + l) % buf.length;
+    count -= l;
+    notifyAll();
+    return l;
+  }
+
+  private synchronized void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      while (count == buf.length && !readerClosed) {
+        await();
+      }
+      if (readerClosed) {
+        throw new IOException("Pipe closed by reader");
+      }
+      if (writerClosed) {
+        throw new IOException("Pipe closed");
+      }
+      int tail = (head + count) % buf.length;
+      int l = Math.min(len, Math.min(buf.length - count, buf.length - tail));
+      System.arraycopy(b, off, buf, tail, l);
+      count += l;
+      off += l;
+      len -= l;
+      notifyAll();
+    }
+  }
+
+  private void await() throws InterruptedIOException {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  private synchronized void closeReader() {
+    readerClosed = true;
+    notifyAll();
+  }
+
+  private synchronized void closeWriter() {
+    writerClosed = true;
+    notifyAll();
+  }
+}
@@ -0,0 +1,178 @@
+package io.takari.jdkget;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides when and how soon failed requests are retried. Retries back off exponentially with full
+ * jitter, draw from a budget that only successes replenish, and stop early for hosts whose circuit
+ * breaker is open.
+ * <p>
+ * A single policy is meant to be shared by everything talking to the same hosts, like all workers of a
+ * {@link MirrorRemote}, so that one of them noticing an unhealthy host makes the others fail fast.
+ */
+public class RetryPolicy {
+
+  public static final long DEFAULT_BASE_DELAY = 500L;
+  public static final long DEFAULT_MAX_DELAY = 30L * 1000L;
+  public static final int DEFAULT_BUDGET = 10;
+  public static final double DEFAULT_SUCCESS_CREDIT = 0.2;
+  public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+  public static final long DEFAULT_OPEN_TIME = 60L * 1000L;
+
+  private final long baseDelay;
+  private final long maxDelay;
+  private final int maxBudget;
+  private final double successCredit;
+  private final int failureThreshold;
+  private final long openTime;
+  private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+  private double budget;
+
+  public RetryPolicy() {
+    this(DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_BUDGET, DEFAULT_SUCCESS_CREDIT, DEFAULT_FAILURE_THRESHOLD,
+        DEFAULT_OPEN_TIME);
+  }
+
+  /**
+   * @param baseDelay upper bound of the first retry delay, doubled for every further attempt
+   * @param maxDelay cap of the retry delay
+   * @param maxBudget number of retries available, and the most successes can restore
+   * @param successCredit fraction of a retry each success adds back to the budget
+   * @param failureThreshold consecutive failures after which a host's circuit opens
+   * @param openTime how long an open circuit fails requests before letting a probe through
+   */
+  public RetryPolicy(long baseDelay, long maxDelay, int maxBudget, double successCredit, int failureThreshold,
+      long openTime) {
+    this.baseDelay = baseDelay;
+    this.maxDelay = maxDelay;
+    this.maxBudget = maxBudget;
+    this.successCredit = successCredit;
+    this.failureThreshold = failureThreshold;
+    this.openTime = openTime;
+    this.budget = maxBudget;
+  }
+
+  /**
+   * Returns a random delay between 0 and <code>min(maxDelay, baseDelay * 2^attempt)</code>.
+   */
+  public long delay(int attempt) {
+    long cap = maxDelay;
+    if (attempt < 62 && baseDelay <= maxDelay >> attempt) {
+      cap = baseDelay << attempt;
+    }
+    return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+  }
+
+  /**
+   * Sleeps for the delay of the given attempt, counted from 0 for the first retry.
+   */
+  public void backoff(int attempt) throws InterruptedException {
+    long d = delay(attempt);
+    if (d > 0) {
+      Thread.sleep(d);
+    }
+  }
+
+  /**
+   * Takes a retry from the budget, returns false if it is exhausted.
+   */
+  public synchronized boolean acquireRetry() {
+    if (budget < 1) {
+      return false;
+    }
+    budget -= 1;
+    return true;
+  }
+
+  /**
+   * Credits a successful operation to the retry budget.
+   */
+  public synchronized void succeeded() {
+    budget = Math.min(maxBudget, budget + successCredit);
+  }
+
+  /**
+   * Throws if the host's circuit is open. Once the open time is over a single caller is let through to
+   * probe the host, others keep failing until it reports an outcome with {@link #hostSucceeded(String)},
+   * {@link #hostFailed(String)} or {@link #hostAbandoned(String)}.
+   */
+  public void checkHost(String host) throws CircuitOpenException {
+    Circuit c = circuits.get(host);
+    if (c == null) {
+      return;
+    }
+    synchronized (c) {
+      if (c.failures < failureThreshold) {
+        return;
+      }
+      if (System.currentTimeMillis() >= c.openUntil && c.prober == null) {
+        c.prober = Thread.currentThread();
+        return;
+      }
+    }
+    throw new CircuitOpenException(host);
+  }
+
+  /**
+   * Records that the host answered properly, which is any response other than a server error, and
+   * closes its circuit.
+   */
+  public void hostSucceeded(String host) {
+    Circuit c = circuits.get(host);
+    if (c != null) {
+      synchronized (c) {
+        c.failures = 0;
+        c.prober = null;
+      }
+    }
+  }
+
+  public void hostFailed(String host) {
+    Circuit c = circuits.computeIfAbsent(host, h -> new Circuit());
+    synchronized (c) {
+      c.failures++;
+      c.prober = null;
+      if (c.failures >= failureThreshold) {
+        c.openUntil = System.currentTimeMillis() + openTime;
+      }
+    }
+  }
+
+  /**
+   * Ends a request to the host that has no outcome to report, like one that was interrupted. If the
+   * calling thread was probing the host, the next caller gets to probe it instead. Does nothing after
+   * an outcome was reported, so it can be called unconditionally once done with a host.
+   */
+  public void hostAbandoned(String host) {
+    Circuit c = circuits.get(host);
+    if (c != null) {
+      synchronized (c) {
+        if (c.prober == Thread.currentThread()) {
+          c.prober = null;
+        }
+      }
+    }
+  }
+
+  private static class Circuit {
+    int failures;
+    long openUntil;
+    // the thread let through to probe an open circuit
+    Thread prober;
+  }
+
+  /**
+   * Thrown instead of contacting a host that recently failed repeatedly.
+   */
+  public static class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String host) {
+      super("Too many recent failures talking to " + host + ", not trying again for now");
+    }
+  }
+}
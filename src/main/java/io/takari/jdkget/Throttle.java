@@ -0,0 +1,204 @@
+package io.takari.jdkget;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bandwidth and concurrency limits shared by all downloads of a transport. Throughput is capped with a
+ * token bucket holding up to one second worth of bytes, optionally only during given hours of the day,
+ * and the number of concurrent transfers from a single host is capped with a semaphore per host.
+ */
+public class Throttle {
+
+  private final long bytesPerSecond;
+  private final int fromHour;
+  private final int toHour;
+  private final int hostConnections;
+  private final Map<String, Semaphore> hosts = new ConcurrentHashMap<>();
+
+  private final LongAdder transferred = new LongAdder();
+
+  private double tokens;
+  private long refilled = System.nanoTime();
+
+  /**
+   * @param bytesPerSecond total throughput, 0 for unlimited
+   * @param fromHour first hour of the day the rate limit applies, -1 for all day
+   * @param toHour hour of the day the rate limit stops applying, may be less than fromHour to span midnight
+   * @param hostConnections concurrent transfers per host, 0 for unlimited
+   */
+  public Throttle(long bytesPerSecond, int fromHour, int toHour, int hostConnections) {
+    this.bytesPerSecond = bytesPerSecond;
+    this.fromHour = fromHour;
+    this.toHour = toHour;
+    this.hostConnections = hostConnections;
+    this.tokens = bytesPerSecond;
+  }
+
+  /**
+   * Creates a throttle from the {@link ITransportFactory#PARAM_RATE_LIMIT},
+   * {@link ITransportFactory#PARAM_RATE_LIMIT_HOURS} and {@link ITransportFactory#PARAM_HOST_CONNECTIONS}
+   * parameters, or returns an {@link #unlimited()} one if none are set.
+   */
+  public static Throttle fromParameters(Map<String, String> parameters) {
+    if (parameters == null) {
+      return unlimited();
+    }
+    String rate = parameters.get(ITransportFactory.PARAM_RATE_LIMIT);
+    String hours = parameters.get(ITransportFactory.PARAM_RATE_LIMIT_HOURS);
+    String hostConnections = parameters.get(ITransportFactory.PARAM_HOST_CONNECTIONS);
+    if (rate == null && hostConnections == null) {
+      return unlimited();
+    }
+
+    int from = -1;
+    int to = -1;
+    if (hours != null) {
+      int dash = hours.indexOf('-');
+      if (dash == -1) {
+        throw new IllegalArgumentException("Invalid rate limit hours, expected <from>-<to>: " + hours);
+      }
+      from = Integer.parseInt(hours.substring(0, dash).trim());
+      to = Integer.parseInt(hours.substring(dash + 1).trim());
+    }
+    return new Throttle(rate != null ? parseRate(rate) : 0, from, to,
+        hostConnections != null ? Integer.parseInt(hostConnections) : 0);
+  }
+
+  /**
+   * Creates a throttle that limits nothing and only counts the bytes transferred. Every transport needs
+   * its own, so that they do not add to each other's counts.
+   */
+  public static Throttle unlimited() {
+    return new Throttle(0, -1, -1, 0);
+  }
+
+  /**
+   * Parses a number of bytes per second with an optional k, m or g suffix.
+   */
+  static long parseRate(String rate) {
+    String r = rate.trim().toLowerCase();
+    long mult = 1;
+    if (r.endsWith("k")) {
+      mult = 1024L;
+    } else if (r.endsWith("m")) {
+      mult = 1024L * 1024L;
+    } else if (r.endsWith("g")) {
+      mult = 1024L * 1024L * 1024L;
+    }
+    if (mult != 1) {
+      r = r.substring(0, r.length() - 1);
+    }
+    return Long.parseLong(r) * mult;
+  }
+
+  public long getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  public int getHostConnections() {
+    return hostConnections;
+  }
+
+  boolean isLimiting(int hour) {
+    if (bytesPerSecond <= 0) {
+      return false;
+    }
+    if (fromHour < 0) {
+      return true;
+    }
+    return fromHour <= toHour ? hour >= fromHour && hour < toHour : hour >= fromHour || hour < toHour;
+  }
+
+  /**
+   * Takes the given number of bytes from the bucket, waiting for them to become available. Callers going
+   * into debt make the following ones wait longer, which keeps concurrent transfers fair.
+   */
+  public void acquire(int bytes) throws InterruptedException {
+    transferred.add(bytes);
+    if (bytesPerSecond <= 0 || !isLimiting(LocalTime.now().getHour())) {
+      return;
+    }
+    long wait;
+    synchronized (this) {
+      long now = System.nanoTime();
+      tokens = Math.min(bytesPerSecond, tokens + (now - refilled) * (double) bytesPerSecond / 1e9);
+      refilled = now;
+      tokens -= bytes;
+      wait = tokens < 0 ? (long) (-tokens * 1e9 / bytesPerSecond) : 0;
+    }
+    if (wait > 0) {
+      TimeUnit.NANOSECONDS.sleep(wait);
+    }
+  }
+
+  /**
+   * Waits for a free transfer slot for the host; the returned permit must be closed when done. Closing it
+   * again has no effect.
+   */
+  public Closeable connection(String host) throws InterruptedException {
+    if (hostConnections <= 0) {
+      return () -> {};
+    }
+    Semaphore sem = hosts.computeIfAbsent(host, h -> new Semaphore(hostConnections, true));
+    sem.acquire();
+    AtomicBoolean released = new AtomicBoolean();
+    return () -> {
+      if (released.compareAndSet(false, true)) {
+        sem.release();
+      }
+    };
+  }
+
+  /**
+   * Returns the number of bytes that went through {@link #acquire(int)} or a wrapped stream so far,
+   * whether or not they were limited.
+   */
+  public long getTransferred() {
+    return transferred.sum();
+  }
+
+  /**
+   * Wraps the stream so that reading from it draws from the bucket.
+   */
+  public InputStream wrap(InputStream in) {
+    return new FilterInputStream(in) {
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+          take(1);
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int l = super.read(b, off, len);
+        if (l > 0) {
+          take(l);
+        }
+        return l;
+      }
+
+      private void take(int l) throws InterruptedIOException {
+        try {
+          acquire(l);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+    };
+  }
+}
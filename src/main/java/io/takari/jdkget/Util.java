@@ -1,8 +1,12 @@
 package io.takari.jdkget;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.concurrent.TimeUnit;
 
 import io.takari.jdkget.model.JdkVersion;
@@ -29,15 +33,63 @@ public class Util {
     return entryName;
   }
 
+  /**
+   * Buffer size for wrapping decompressing streams around files or sockets, their defaults are as small
+   * as 512 bytes and turn into a system call per read.
+   */
+  public static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+  private static final int COPY_BUFFER_SIZE = 256 * 1024;
+  // interrupts and the clock are only looked at after this many bytes
+  private static final long CHECK_INTERVAL = 1024 * 1024;
+  private static final long TRANSFER_CHUNK = 8L * 1024L * 1024L;
+
+  // extractors copy thousands of small entries, reuse one buffer per thread instead of allocating each time
+  private static final ThreadLocal<byte[]> copyBuffer = ThreadLocal.withInitial(() -> new byte[COPY_BUFFER_SIZE]);
+
   public static void copyInterruptibly(InputStream in, OutputStream out) throws IOException, InterruptedException {
-    byte[] buf = new byte[4096];
+    if (in instanceof FileInputStream && out instanceof FileOutputStream) {
+      transfer(((FileInputStream) in).getChannel(), ((FileOutputStream) out).getChannel());
+      return;
+    }
+
+    byte[] buf = copyBuffer.get();
+    long unchecked = 0;
     int l;
     while ((l = in.read(buf)) != -1) {
-      checkInterrupt();
       out.write(buf, 0, l);
+      unchecked += l;
+      if (unchecked >= CHECK_INTERVAL) {
+        unchecked = 0;
+        checkInterrupt();
+      }
+    }
+    checkInterrupt();
+  }
+
+  /**
+   * Copies a file by letting the kernel move the bytes between the channels.
+   */
+  public static void copyFile(File source, File target) throws IOException, InterruptedException {
+    try (FileInputStream in = new FileInputStream(source); FileOutputStream out = new FileOutputStream(target)) {
+      transfer(in.getChannel(), out.getChannel());
     }
   }
 
+  private static void transfer(FileChannel in, FileChannel out) throws IOException, InterruptedException {
+    long pos = in.position();
+    long size = in.size();
+    while (pos < size) {
+      long l = in.transferTo(pos, Math.min(TRANSFER_CHUNK, size - pos), out);
+      if (l <= 0) {
+        break;
+      }
+      pos += l;
+      checkInterrupt();
+    }
+    in.position(pos);
+  }
+
   public static void checkInterrupt() throws InterruptedException {
     if (Thread.interrupted()) {
       throw new InterruptedException();
@@ -57,13 +109,19 @@ public class Util {
       totalBytes = in.available();
     }
     long copiedBytes = 0;
+    long unchecked = 0;
 
-    byte[] buf = new byte[4096];
+    byte[] buf = copyBuffer.get();
     int l;
     while ((l = in.read(buf)) != -1) {
-      checkInterrupt();
       out.write(buf, 0, l);
       copiedBytes += l;
+      unchecked += l;
+      if (unchecked < CHECK_INTERVAL) {
+        continue;
+      }
+      unchecked = 0;
+      checkInterrupt();
 
       long time = System.currentTimeMillis() - start;
       int chunk = (int) (time / PROGRESS_FREQ);
@@ -72,6 +130,7 @@ public class Util {
         output.printProgress(time, copiedBytes, totalBytes);
       }
     }
+    checkInterrupt();
   }
 
   public static String timeToStr(long t) {
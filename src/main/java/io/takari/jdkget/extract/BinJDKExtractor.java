@@ -11,6 +11,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import io.takari.jdkget.JdkGetter;
+import io.takari.jdkget.Util;
 import io.takari.jdkget.model.JdkBinary;
 import io.takari.jdkget.osx.PosixModes;
 
@@ -25,7 +26,7 @@ public class BinJDKExtractor extends AbstractZipExtractor {
     context.getLog().info("Extracting " + jdkImage.getName() + " into " + outputDir);
     outputDir.mkdir();
 
-    try (InputStream in = new BufferedInputStream(new FileInputStream(jdkImage))) {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(jdkImage), Util.STREAM_BUFFER_SIZE)) {
       // find start of zip
       findZipStream(in);
 
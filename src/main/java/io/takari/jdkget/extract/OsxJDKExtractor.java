@@ -1,5 +1,6 @@
 package io.takari.jdkget.extract;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -89,13 +90,14 @@ public class OsxJDKExtractor implements IJdkExtractor {
     for (File jdkGz : payloads) {
       Util.checkInterrupt();
       File cpio = new File(workDir, "temp" + System.currentTimeMillis() + ".cpio");
-      try (GZIPInputStream is = new GZIPInputStream(new FileInputStream(jdkGz));
+      try (GZIPInputStream is = new GZIPInputStream(new FileInputStream(jdkGz), Util.STREAM_BUFFER_SIZE);
           FileOutputStream os = new FileOutputStream(cpio)) {
         Util.copyInterruptibly(is, os);
       }
 
       // https://people.freebsd.org/~kientzle/libarchive/man/cpio.5.txt
-      try (ArchiveInputStream is = new CpioArchiveInputStream(new FileInputStream(cpio))) {
+      try (ArchiveInputStream is = new CpioArchiveInputStream(
+          new BufferedInputStream(new FileInputStream(cpio), Util.STREAM_BUFFER_SIZE))) {
         CpioArchiveEntry e;
         while ((e = (CpioArchiveEntry) is.getNextEntry()) != null) {
           Util.checkInterrupt();
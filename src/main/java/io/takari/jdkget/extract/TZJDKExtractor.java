@@ -1,15 +1,18 @@
 package io.takari.jdkget.extract;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
 import org.apache.commons.compress.compressors.z.ZCompressorInputStream;
 
+import io.takari.jdkget.Util;
+
 public class TZJDKExtractor extends AbstractTarJDKExtractor {
 
   @Override
   protected InputStream wrap(InputStream in) throws IOException {
-    return new ZCompressorInputStream(in);
+    return new ZCompressorInputStream(new BufferedInputStream(in, Util.STREAM_BUFFER_SIZE));
   }
   
 }
@@ -4,11 +4,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.zip.GZIPInputStream;
 
+import io.takari.jdkget.Util;
+
 public class TgzJDKExtractor extends AbstractTarJDKExtractor {
 
   @Override
   protected InputStream wrap(InputStream in) throws IOException {
-    return new GZIPInputStream(in);
+    return new GZIPInputStream(in, Util.STREAM_BUFFER_SIZE);
   }
   
 }
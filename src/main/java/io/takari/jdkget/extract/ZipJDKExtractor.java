@@ -10,26 +10,34 @@ import java.nio.file.Path;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+import io.takari.jdkget.IStreamingJdkExtractor;
 import io.takari.jdkget.JdkGetter;
+import io.takari.jdkget.Util;
 import io.takari.jdkget.model.JdkBinary;
 import io.takari.jdkget.osx.PosixModes;
 
-public class ZipJDKExtractor extends AbstractZipExtractor {
+public class ZipJDKExtractor extends AbstractZipExtractor implements IStreamingJdkExtractor {
 
   @Override
   public boolean extractJdk(JdkGetter context, JdkBinary bin, File jdkImage, File outputDir) throws IOException, InterruptedException {
 
     context.getLog().info("Extracting " + jdkImage.getName() + " into " + outputDir);
 
-    outputDir.mkdir();
+    try (InputStream in = new BufferedInputStream(new FileInputStream(jdkImage), Util.STREAM_BUFFER_SIZE)) {
+      return extractJdk(context, bin, in, outputDir);
+    }
+  }
 
-    try (InputStream in = new BufferedInputStream(new FileInputStream(jdkImage))) {
-      ZipInputStream zip = new ZipInputStream(in);
+  @Override
+  public boolean extractJdk(JdkGetter context, JdkBinary bin, InputStream in, File outputDir)
+      throws IOException, InterruptedException {
 
-      ZipEntry e;
-      while ((e = zip.getNextEntry()) != null) {
-        extractEntry(outputDir, bin.getRelease().getVersion(), e, zip);
-      }
+    outputDir.mkdir();
+
+    ZipInputStream zip = new ZipInputStream(in);
+    ZipEntry e;
+    while ((e = zip.getNextEntry()) != null) {
+      extractEntry(outputDir, bin.getRelease().getVersion(), e, zip);
     }
 
     // make sure bin files are executables
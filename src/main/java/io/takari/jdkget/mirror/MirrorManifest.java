@@ -0,0 +1,201 @@
+package io.takari.jdkget.mirror;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.takari.jdkget.model.JdkBinary;
+
+/**
+ * Remembers which files of a mirror were verified, so that later runs can trust files that have not
+ * been touched since instead of hashing them again. A file is trusted when its size, modification time
+ * and inode are the ones it had when verified, the digests it was verified against are still the
+ * catalog's, and it was verified less than {@link #DEFAULT_MAX_TRUST} ago.
+ * <p>
+ * The manifest is a tab separated file named {@link #FILENAME} in the mirror root. It also keeps the
+ * download and hashing rates measured by recent runs, for estimating how long the next one takes.
+ */
+public class MirrorManifest {
+
+  public static final String FILENAME = ".jdkget-manifest";
+  public static final long DEFAULT_MAX_TRUST = TimeUnit.DAYS.toMillis(30);
+
+  private static final String HEADER = "# jdkget mirror manifest v1";
+  private static final String DOWNLOAD_RATE = "downloadRate";
+  private static final String HASH_RATE = "hashRate";
+
+  private static class Entry {
+    final long size;
+    final long mtime;
+    final String inode;
+    final String md5;
+    final String sha256;
+    final long verified;
+
+    Entry(long size, long mtime, String inode, String md5, String sha256, long verified) {
+      this.size = size;
+      this.mtime = mtime;
+      this.inode = inode;
+      this.md5 = md5;
+      this.sha256 = sha256;
+      this.verified = verified;
+    }
+  }
+
+  private final File root;
+  private final long maxTrust;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private volatile double downloadRate;
+  private volatile double hashRate;
+
+  private MirrorManifest(File root, long maxTrust) {
+    this.root = root;
+    this.maxTrust = maxTrust;
+  }
+
+  /**
+   * Loads the manifest of a mirror, an unreadable or missing one is treated as empty.
+   */
+  public static MirrorManifest load(File root) {
+    return load(root, DEFAULT_MAX_TRUST);
+  }
+
+  public static MirrorManifest load(File root, long maxTrust) {
+    MirrorManifest m = new MirrorManifest(root, maxTrust);
+    File f = new File(root, FILENAME);
+    if (!f.isFile()) {
+      return m;
+    }
+    try (BufferedReader r = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = r.readLine()) != null) {
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] p = line.split("\t", -1);
+        if (p.length == 2 && p[0].equals(DOWNLOAD_RATE)) {
+          m.downloadRate = Double.parseDouble(p[1]);
+        } else if (p.length == 2 && p[0].equals(HASH_RATE)) {
+          m.hashRate = Double.parseDouble(p[1]);
+        }
+        if (p.length != 7) {
+          continue;
+        }
+        m.entries.put(p[0], new Entry(Long.parseLong(p[1]), Long.parseLong(p[2]), p[3], empty(p[4]), empty(p[5]),
+            Long.parseLong(p[6])));
+      }
+    } catch (IOException | NumberFormatException e) {
+      m.entries.clear();
+      m.downloadRate = 0;
+      m.hashRate = 0;
+    }
+    return m;
+  }
+
+  private static String empty(String s) {
+    return s.isEmpty() ? null : s;
+  }
+
+  /**
+   * Returns true if the file was verified for this binary and has not changed since.
+   */
+  public boolean isTrusted(JdkBinary bin, File file) {
+    Entry e = entries.get(bin.getPath());
+    if (e == null || System.currentTimeMillis() - e.verified > maxTrust) {
+      return false;
+    }
+    if (!Objects.equals(e.md5, bin.getMd5()) || !Objects.equals(e.sha256, bin.getSha256())) {
+      return false;
+    }
+    try {
+      BasicFileAttributes a = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+      return a.isRegularFile() && a.size() == e.size && a.lastModifiedTime().toMillis() == e.mtime
+          && inode(a).equals(e.inode);
+    } catch (IOException ex) {
+      return false;
+    }
+  }
+
+  /**
+   * Records that the file was just verified against the binary's digests.
+   */
+  public void verified(JdkBinary bin, File file) throws IOException {
+    BasicFileAttributes a = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    entries.put(bin.getPath(), new Entry(a.size(), a.lastModifiedTime().toMillis(), inode(a), bin.getMd5(),
+        bin.getSha256(), System.currentTimeMillis()));
+  }
+
+  public void remove(JdkBinary bin) {
+    entries.remove(bin.getPath());
+  }
+
+  /**
+   * Bytes per second all downloads of recent runs achieved together, 0 if not known.
+   */
+  public double getDownloadRate() {
+    return downloadRate;
+  }
+
+  /**
+   * Bytes per second a single thread hashed in recent runs, 0 if not known.
+   */
+  public double getHashRate() {
+    return hashRate;
+  }
+
+  /**
+   * Adds the download rate of a run, averaged with earlier ones so one odd run does not dominate.
+   */
+  public void recordDownloadRate(double rate) {
+    downloadRate = downloadRate > 0 ? (downloadRate + rate) / 2 : rate;
+  }
+
+  public void recordHashRate(double rate) {
+    hashRate = hashRate > 0 ? (hashRate + rate) / 2 : rate;
+  }
+
+  private static String inode(BasicFileAttributes a) {
+    Object key = a.fileKey();
+    return key == null ? "" : key.toString();
+  }
+
+  /**
+   * Writes the manifest, replacing the previous one atomically.
+   */
+  public void save() throws IOException {
+    Path target = new File(root, FILENAME).toPath();
+    Path tmp = new File(root, FILENAME + "." + UUID.randomUUID() + ".tmp").toPath();
+    try {
+      try (Writer w = new BufferedWriter(Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))) {
+        w.write(HEADER);
+        w.write('\n');
+        if (downloadRate > 0) {
+          w.write(DOWNLOAD_RATE + "\t" + downloadRate + "\n");
+        }
+        if (hashRate > 0) {
+          w.write(HASH_RATE + "\t" + hashRate + "\n");
+        }
+        for (Map.Entry<String, Entry> me : entries.entrySet()) {
+          Entry e = me.getValue();
+          w.write(me.getKey() + "\t" + e.size + "\t" + e.mtime + "\t" + e.inode + "\t" + (e.md5 == null ? "" : e.md5)
+              + "\t" + (e.sha256 == null ? "" : e.sha256) + "\t" + e.verified + "\n");
+        }
+      }
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+}
@@ -0,0 +1,648 @@
+package io.takari.jdkget.mirror;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.hash.Hashing;
+
+import io.takari.jdkget.IOutput;
+
+/**
+ * Serves a mirror over HTTP in the layout {@link io.takari.jdkget.oracle.OracleWebsiteTransport} expects, so
+ * that clients can use it with <code>-u http://host:port</code>, and the releases catalog at
+ * {@link #CATALOG_PATH} for <code>-releases</code>.
+ * <p>
+ * Idle and keep-alive connections wait on a single selector thread and only take a worker from the
+ * bounded pool while a request is being answered. File bodies go out with {@link FileChannel#transferTo},
+ * which the kernel turns into sendfile, and honour single byte ranges, If-Range, If-None-Match and
+ * If-Modified-Since.
+ */
+public class MirrorServer implements Closeable {
+
+  public static final String CATALOG_PATH = "/java_releases_v1.yml";
+  public static final int DEFAULT_THREADS = 64;
+
+  static final long IDLE_TIMEOUT = 15L * 1000L;
+  static final long WRITE_TIMEOUT = 60L * 1000L;
+  private static final int MAX_HEAD = 16 * 1024;
+  private static final long TRANSFER_CHUNK = 8L * 1024L * 1024L;
+
+  private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+  private static class Conn {
+    final SocketChannel channel;
+    final ByteBuffer in = ByteBuffer.allocate(MAX_HEAD);
+    SelectionKey key;
+    long lastActive = System.currentTimeMillis();
+    boolean busy;
+
+    Conn(SocketChannel channel) {
+      this.channel = channel;
+    }
+  }
+
+  private static class Request {
+    String method;
+    String target;
+    boolean http11;
+    final Map<String, String> headers = new HashMap<>();
+
+    String header(String name) {
+      return headers.get(name);
+    }
+  }
+
+  private static class BadRequest extends Exception {
+    private static final long serialVersionUID = 1L;
+    final int status;
+
+    BadRequest(int status) {
+      super(null, null, false, false);
+      this.status = status;
+    }
+  }
+
+  private final File root;
+  private final Path rootPath;
+  private final InetSocketAddress address;
+  private final int threads;
+  private final IOutput output;
+
+  private byte[] catalog;
+  private String catalogEtag;
+  private long catalogTime;
+
+  private ServerSocketChannel server;
+  private Selector selector;
+  private ExecutorService workers;
+  private Thread acceptor;
+  private volatile boolean closed;
+  private final Queue<Conn> ready = new ConcurrentLinkedQueue<>();
+  private final List<Selector> writeSelectors = new ArrayList<>();
+  private final ThreadLocal<Selector> writeSelector = ThreadLocal.withInitial(() -> {
+    try {
+      Selector s = Selector.open();
+      synchronized (writeSelectors) {
+        writeSelectors.add(s);
+      }
+      return s;
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  });
+
+  /**
+   * @param root mirror directory, as written by {@link io.takari.jdkget.MirrorRemote}
+   * @param address address to listen on, port 0 picks a free one
+   * @param threads number of requests answered concurrently
+   */
+  public MirrorServer(File root, InetSocketAddress address, int threads, IOutput output) {
+    this.root = root;
+    this.rootPath = root.toPath().toAbsolutePath().normalize();
+    this.address = address;
+    this.threads = Math.max(1, threads);
+    this.output = output;
+  }
+
+  /**
+   * Contents served at {@link #CATALOG_PATH} when the mirror has no such file itself.
+   */
+  public void setCatalog(byte[] catalog) {
+    this.catalog = catalog;
+    this.catalogEtag = catalog == null ? null : "\"" + Hashing.sha1().hashBytes(catalog).toString() + "\"";
+    this.catalogTime = System.currentTimeMillis() / 1000L * 1000L;
+  }
+
+  public void start() throws IOException {
+    server = ServerSocketChannel.open();
+    server.bind(address, 1024);
+    server.configureBlocking(false);
+    selector = Selector.open();
+    server.register(selector, SelectionKey.OP_ACCEPT);
+
+    AtomicInteger n = new AtomicInteger();
+    workers = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "jdkget-serve-" + n.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    acceptor = new Thread(this::select, "jdkget-serve-selector");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    output.info("** Serving " + root + " on " + getAddress());
+  }
+
+  public InetSocketAddress getAddress() throws IOException {
+    return (InetSocketAddress) server.getLocalAddress();
+  }
+
+  /**
+   * Blocks until the server is closed.
+   */
+  public void join() throws InterruptedException {
+    acceptor.join();
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    if (selector != null) {
+      selector.wakeup();
+    }
+    if (workers != null) {
+      workers.shutdownNow();
+    }
+    if (acceptor != null) {
+      try {
+        acceptor.join(5000L);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (writeSelectors) {
+      for (Selector s : writeSelectors) {
+        s.close();
+      }
+    }
+  }
+
+  private void select() {
+    try {
+      long lastSweep = System.currentTimeMillis();
+      while (!closed) {
+        selector.select(1000L);
+
+        Conn c;
+        while ((c = ready.poll()) != null) {
+          if (c.key.isValid()) {
+            c.busy = false;
+            c.lastActive = System.currentTimeMillis();
+            c.key.interestOps(SelectionKey.OP_READ);
+          }
+        }
+
+        for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext();) {
+          SelectionKey key = it.next();
+          it.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+          } else if (key.isReadable()) {
+            read((Conn) key.attachment());
+          }
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - lastSweep >= 1000L) {
+          lastSweep = now;
+          for (SelectionKey key : selector.keys()) {
+            Conn idle = (Conn) key.attachment();
+            if (idle != null && !idle.busy && now - idle.lastActive > IDLE_TIMEOUT) {
+              close(idle);
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      output.error("Mirror server stopped", e);
+    } finally {
+      for (SelectionKey key : selector.keys()) {
+        closeQuietly(key.channel());
+      }
+      closeQuietly(selector);
+      closeQuietly(server);
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel ch;
+    while ((ch = server.accept()) != null) {
+      ch.configureBlocking(false);
+      ch.socket().setTcpNoDelay(true);
+      Conn c = new Conn(ch);
+      c.key = ch.register(selector, SelectionKey.OP_READ, c);
+    }
+  }
+
+  private void read(Conn c) {
+    try {
+      int l = c.channel.read(c.in);
+      if (l == -1) {
+        close(c);
+        return;
+      }
+      c.lastActive = System.currentTimeMillis();
+      if (headEnd(c.in) != -1 || !c.in.hasRemaining()) {
+        dispatch(c);
+      }
+    } catch (IOException e) {
+      close(c);
+    }
+  }
+
+  private void dispatch(Conn c) {
+    c.busy = true;
+    c.key.interestOps(0);
+    workers.execute(() -> serve(c));
+  }
+
+  /**
+   * Answers the requests buffered on the connection, then hands it back to the selector if it is kept alive.
+   */
+  private void serve(Conn c) {
+    try {
+      while (true) {
+        int end = headEnd(c.in);
+        if (end == -1) {
+          if (!c.in.hasRemaining()) {
+            respond(c, 431, "Request header too large", false);
+            close(c);
+            return;
+          }
+          break;
+        }
+        String head = new String(c.in.array(), 0, end, StandardCharsets.ISO_8859_1);
+        c.in.flip();
+        c.in.position(end + 4);
+        c.in.compact();
+
+        boolean keepAlive;
+        try {
+          keepAlive = serve(c, parse(head));
+        } catch (BadRequest e) {
+          respond(c, e.status, null, false);
+          keepAlive = false;
+        }
+        if (!keepAlive) {
+          close(c);
+          return;
+        }
+      }
+      ready.add(c);
+      selector.wakeup();
+    } catch (IOException | RuntimeException e) {
+      close(c);
+    }
+  }
+
+  private static int headEnd(ByteBuffer in) {
+    byte[] b = in.array();
+    for (int i = 3; i < in.position(); i++) {
+      if (b[i] == '\n' && b[i - 1] == '\r' && b[i - 2] == '\n' && b[i - 3] == '\r') {
+        return i - 3;
+      }
+    }
+    return -1;
+  }
+
+  private static Request parse(String head) throws BadRequest {
+    String[] lines = head.split("\r\n");
+    String[] start = lines[0].split(" ");
+    if (start.length != 3 || !start[2].startsWith("HTTP/1.")) {
+      throw new BadRequest(400);
+    }
+    Request r = new Request();
+    r.method = start[0];
+    r.target = start[1];
+    r.http11 = !start[2].equals("HTTP/1.0");
+    for (int i = 1; i < lines.length; i++) {
+      int colon = lines[i].indexOf(':');
+      if (colon <= 0) {
+        throw new BadRequest(400);
+      }
+      r.headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT), lines[i].substring(colon + 1).trim());
+    }
+    return r;
+  }
+
+  /**
+   * Answers a request, returns whether the connection can be kept alive.
+   */
+  private boolean serve(Conn c, Request r) throws IOException, BadRequest {
+    String connection = r.header("connection");
+    boolean keepAlive = r.http11 ? !"close".equalsIgnoreCase(connection) : "keep-alive".equalsIgnoreCase(connection);
+    if (r.header("content-length") != null || r.header("transfer-encoding") != null) {
+      // no request has a body here, rather than skipping one the connection is not reused
+      keepAlive = false;
+    }
+
+    boolean head = r.method.equals("HEAD");
+    if (!head && !r.method.equals("GET")) {
+      respond(c, 405, "Allow: GET, HEAD\r\n", keepAlive);
+      return keepAlive;
+    }
+
+    String path = decode(r.target);
+    if (path.equals(CATALOG_PATH) && catalog != null && !new File(root, CATALOG_PATH).isFile()) {
+      return sendCatalog(c, r, head, keepAlive);
+    }
+
+    Path file = resolve(path);
+    BasicFileAttributes attrs;
+    try {
+      attrs = file == null ? null : Files.readAttributes(file, BasicFileAttributes.class);
+    } catch (IOException e) {
+      attrs = null;
+    }
+    if (attrs == null || !attrs.isRegularFile()) {
+      respond(c, 404, null, keepAlive);
+      return keepAlive;
+    }
+
+    long size = attrs.size();
+    long mtime = attrs.lastModifiedTime().toMillis() / 1000L * 1000L;
+    String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(attrs.lastModifiedTime().toMillis()) + "\"";
+    if (notModified(r, etag, mtime)) {
+      respond(c, 304, validators(etag, mtime), keepAlive);
+      return keepAlive;
+    }
+
+    long[] range = range(r, etag, mtime, size);
+    if (range != null && range.length == 0) {
+      respond(c, 416, "Content-Range: bytes */" + size + "\r\n", keepAlive);
+      return keepAlive;
+    }
+
+    try (FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+      long from = range == null ? 0 : range[0];
+      long length = range == null ? size : range[1] - range[0] + 1;
+      StringBuilder h = new StringBuilder();
+      h.append("HTTP/1.1 ").append(range == null ? "200 OK" : "206 Partial Content").append("\r\n");
+      h.append("Content-Type: ").append(contentType(path)).append("\r\n");
+      h.append("Content-Length: ").append(length).append("\r\n");
+      if (range != null) {
+        h.append("Content-Range: bytes ").append(range[0]).append('-').append(range[1]).append('/').append(size)
+            .append("\r\n");
+      }
+      h.append("Accept-Ranges: bytes\r\n");
+      h.append(validators(etag, mtime));
+      h.append(common(keepAlive)).append("\r\n");
+      write(c.channel, ByteBuffer.wrap(h.toString().getBytes(StandardCharsets.ISO_8859_1)));
+      if (!head) {
+        transfer(fc, from, length, c.channel);
+      }
+    }
+    return keepAlive;
+  }
+
+  private boolean sendCatalog(Conn c, Request r, boolean head, boolean keepAlive) throws IOException {
+    if (notModified(r, catalogEtag, catalogTime)) {
+      respond(c, 304, validators(catalogEtag, catalogTime), keepAlive);
+      return keepAlive;
+    }
+    String h = "HTTP/1.1 200 OK\r\n" //
+        + "Content-Type: " + contentType(CATALOG_PATH) + "\r\n" //
+        + "Content-Length: " + catalog.length + "\r\n" //
+        + validators(catalogEtag, catalogTime) //
+        + common(keepAlive) + "\r\n";
+    write(c.channel, ByteBuffer.wrap(h.getBytes(StandardCharsets.ISO_8859_1)));
+    if (!head) {
+      write(c.channel, ByteBuffer.wrap(catalog));
+    }
+    return keepAlive;
+  }
+
+  private static boolean notModified(Request r, String etag, long mtime) {
+    String inm = r.header("if-none-match");
+    if (inm != null) {
+      for (String t : inm.split(",")) {
+        t = t.trim();
+        if (t.equals("*") || t.equals(etag) || t.equals("W/" + etag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    long since = date(r.header("if-modified-since"));
+    return since != -1 && mtime <= since;
+  }
+
+  /**
+   * The requested byte range as first and last position, null for the whole file, and an empty array if
+   * it cannot be satisfied. Multiple ranges are answered with the whole file, which the spec allows.
+   */
+  private static long[] range(Request r, String etag, long mtime, long size) {
+    String range = r.header("range");
+    if (range == null || !range.startsWith("bytes=") || range.indexOf(',') != -1) {
+      return null;
+    }
+    String ifRange = r.header("if-range");
+    if (ifRange != null && !ifRange.equals(etag) && date(ifRange) != mtime) {
+      return null;
+    }
+    String spec = range.substring(6).trim();
+    int dash = spec.indexOf('-');
+    if (dash == -1) {
+      return null;
+    }
+    try {
+      long first;
+      long last;
+      if (dash == 0) {
+        long suffix = Long.parseLong(spec.substring(1));
+        if (suffix == 0) {
+          return new long[0];
+        }
+        first = Math.max(0, size - suffix);
+        last = size - 1;
+      } else {
+        first = Long.parseLong(spec.substring(0, dash));
+        last = dash == spec.length() - 1 ? size - 1 : Math.min(size - 1, Long.parseLong(spec.substring(dash + 1)));
+      }
+      if (first >= size || last < first) {
+        return new long[0];
+      }
+      return new long[] {first, last};
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static long date(String s) {
+    if (s == null) {
+      return -1;
+    }
+    try {
+      return ZonedDateTime.parse(s, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+    } catch (DateTimeParseException e) {
+      return -1;
+    }
+  }
+
+  private static String validators(String etag, long mtime) {
+    return "ETag: " + etag + "\r\nLast-Modified: " + HTTP_DATE.format(Instant.ofEpochMilli(mtime)) + "\r\n";
+  }
+
+  private static String common(boolean keepAlive) {
+    return "Date: " + HTTP_DATE.format(Instant.now()) + "\r\n" //
+        + (keepAlive ? "Keep-Alive: timeout=" + IDLE_TIMEOUT / 1000L + "\r\n" : "Connection: close\r\n");
+  }
+
+  private static String contentType(String path) {
+    if (path.endsWith(".yml")) {
+      return "text/yaml; charset=utf-8";
+    }
+    if (path.endsWith(".gz")) {
+      return "application/gzip";
+    }
+    if (path.endsWith(".zip")) {
+      return "application/zip";
+    }
+    return "application/octet-stream";
+  }
+
+  /**
+   * Maps a request path into the mirror, null for anything outside it or hidden, like the manifest and
+   * partial downloads.
+   */
+  private Path resolve(String path) {
+    if (!path.startsWith("/")) {
+      return null;
+    }
+    for (String segment : path.substring(1).split("/")) {
+      if (segment.isEmpty() || segment.startsWith(".") || segment.endsWith(".part") || segment.indexOf('\\') != -1) {
+        return null;
+      }
+    }
+    Path p = rootPath.resolve(path.substring(1)).normalize();
+    return p.startsWith(rootPath) ? p : null;
+  }
+
+  private static String decode(String target) throws BadRequest {
+    int q = target.indexOf('?');
+    if (q != -1) {
+      target = target.substring(0, q);
+    }
+    if (target.indexOf('%') == -1) {
+      return target;
+    }
+    try {
+      byte[] out = new byte[target.length()];
+      int n = 0;
+      for (int i = 0; i < target.length(); i++) {
+        char ch = target.charAt(i);
+        if (ch == '%') {
+          out[n++] = (byte) Integer.parseInt(target.substring(i + 1, i + 3), 16);
+          i += 2;
+        } else {
+          out[n++] = (byte) ch;
+        }
+      }
+      return new String(out, 0, n, StandardCharsets.UTF_8);
+    } catch (NumberFormatException | IndexOutOfBoundsException e) {
+      throw new BadRequest(400);
+    }
+  }
+
+  private void respond(Conn c, int status, String headers, boolean keepAlive) throws IOException {
+    String h = "HTTP/1.1 " + status + " " + reason(status) + "\r\n" //
+        + (headers == null ? "" : headers) //
+        + (status == 304 ? "" : "Content-Length: 0\r\n") //
+        + common(keepAlive) + "\r\n";
+    write(c.channel, ByteBuffer.wrap(h.getBytes(StandardCharsets.ISO_8859_1)));
+  }
+
+  private static String reason(int status) {
+    switch (status) {
+      case 304:
+        return "Not Modified";
+      case 400:
+        return "Bad Request";
+      case 404:
+        return "Not Found";
+      case 405:
+        return "Method Not Allowed";
+      case 416:
+        return "Range Not Satisfiable";
+      case 431:
+        return "Request Header Fields Too Large";
+      default:
+        return "Error";
+    }
+  }
+
+  private void write(SocketChannel ch, ByteBuffer buf) throws IOException {
+    while (buf.hasRemaining()) {
+      if (ch.write(buf) == 0) {
+        awaitWritable(ch);
+      }
+    }
+  }
+
+  private void transfer(FileChannel fc, long pos, long length, SocketChannel ch) throws IOException {
+    long end = pos + length;
+    while (pos < end) {
+      long l = fc.transferTo(pos, Math.min(TRANSFER_CHUNK, end - pos), ch);
+      if (l > 0) {
+        pos += l;
+      } else if (pos >= fc.size()) {
+        throw new IOException("File shrunk while sending it");
+      } else {
+        awaitWritable(ch);
+      }
+    }
+  }
+
+  /**
+   * Waits for a slow client on a selector of the worker's own, the channel stays non-blocking.
+   */
+  private void awaitWritable(SocketChannel ch) throws IOException {
+    Selector s = writeSelector.get();
+    SelectionKey key = ch.register(s, SelectionKey.OP_WRITE);
+    try {
+      if (s.select(WRITE_TIMEOUT) == 0) {
+        throw new SocketTimeoutException("Client did not read for " + WRITE_TIMEOUT / 1000L + "s");
+      }
+    } finally {
+      key.cancel();
+      s.selectNow();
+    }
+  }
+
+  private void close(Conn c) {
+    if (c.key != null) {
+      c.key.cancel();
+    }
+    closeQuietly(c.channel);
+  }
+
+  private static void closeQuietly(Closeable c) {
+    try {
+      c.close();
+    } catch (IOException e) {
+      // nothing to do
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package io.takari.jdkget.mirror;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.FileUtils;
+
+import io.takari.jdkget.Digests;
+import io.takari.jdkget.IOutput;
+import io.takari.jdkget.ITransport;
+import io.takari.jdkget.JdkGetter;
+import io.takari.jdkget.Throttle;
+import io.takari.jdkget.Util;
+import io.takari.jdkget.model.JCE;
+import io.takari.jdkget.model.JdkBinary;
+
+/**
+ * Gets images from a local or network mounted directory laid out like the output of
+ * {@link io.takari.jdkget.MirrorRemote}. Images are hard linked when the mirror is on the same file
+ * system, otherwise copied by the kernel without passing through the java heap.
+ */
+public class MirrorTransport implements ITransport {
+
+  private static final long PROGRESS_FREQ = 3000L;
+  private static final long TRANSFER_CHUNK = 8L * 1024L * 1024L;
+
+  private final File root;
+  private boolean hardlinks = true;
+  private Throttle throttle = Throttle.unlimited();
+
+  public MirrorTransport(File root) {
+    this.root = root;
+  }
+
+  public File getRoot() {
+    return root;
+  }
+
+  public boolean isHardlinks() {
+    return hardlinks;
+  }
+
+  /**
+   * Whether images may be hard linked from the mirror instead of copied. Defaults to true, as nothing
+   * modifies downloaded images in place.
+   */
+  public void setHardlinks(boolean hardlinks) {
+    this.hardlinks = hardlinks;
+  }
+
+  @Override
+  public Throttle getThrottle() {
+    return throttle;
+  }
+
+  /**
+   * Bandwidth and concurrent transfer limits for copies from the mirror, useful when it is network mounted.
+   * Hard links are not throttled.
+   */
+  public void setThrottle(Throttle throttle) {
+    this.throttle = throttle == null ? Throttle.unlimited() : throttle;
+  }
+
+  @Override
+  public void downloadJdk(JdkGetter context, JdkBinary binary, File jdkImage) throws IOException, InterruptedException {
+    transfer(context, binary.getPath(), jdkImage);
+  }
+
+  @Override
+  public void downloadJce(JdkGetter context, JCE jce, File jceImage) throws IOException, InterruptedException {
+    if (jce == null) {
+      throw new IllegalStateException("No JCE provided");
+    }
+    transfer(context, jce.getPath(), jceImage);
+  }
+
+  @Override
+  public boolean validate(JdkGetter context, JdkBinary bin, File jdkImage) throws IOException, InterruptedException {
+    return Digests.get(jdkImage, bin).validate(bin, context.getLog());
+  }
+
+  @Override
+  public boolean validatesDigests() {
+    return true;
+  }
+
+  private void transfer(JdkGetter context, String path, File target) throws IOException, InterruptedException {
+    File source = new File(root, path);
+    if (!source.isFile()) {
+      throw new IOException("Mirror " + root + " does not contain " + path);
+    }
+    boolean echo = !context.isSilent();
+    if (echo) {
+      context.getLog().info("Getting " + source);
+    }
+
+    File tmp = new File(target.getParentFile(), target.getName() + ".part");
+    Files.deleteIfExists(tmp.toPath());
+    try {
+      if (!hardlinks || !link(source, tmp)) {
+        Closeable permit = throttle.connection(root.getPath());
+        try {
+          copy(source, tmp, echo ? context.getLog() : IOutput.NULL_OUTPUT);
+        } finally {
+          permit.close();
+        }
+      }
+      Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      FileUtils.deleteQuietly(tmp);
+    }
+  }
+
+  private static boolean link(File source, File target) {
+    try {
+      Files.createLink(target.toPath(), source.toPath());
+      return true;
+    } catch (IOException | UnsupportedOperationException e) {
+      // different file system or no hard link support
+      return false;
+    }
+  }
+
+  private void copy(File source, File target, IOutput output) throws IOException, InterruptedException {
+    try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      long size = in.size();
+      long start = System.currentTimeMillis();
+      long lastProgress = start;
+      long pos = 0;
+      // chunked so that interrupts, progress and the rate limit are applied between transfers
+      long chunk = TRANSFER_CHUNK;
+      if (throttle.getBytesPerSecond() > 0) {
+        chunk = Math.max(64L * 1024L, Math.min(chunk, throttle.getBytesPerSecond() / 4));
+      }
+      while (pos < size) {
+        long l = in.transferTo(pos, Math.min(chunk, size - pos), out);
+        if (l <= 0) {
+          throw new IOException("Unexpected end of " + source + " at " + pos + ", expected " + size);
+        }
+        pos += l;
+        throttle.acquire((int) l);
+        Util.checkInterrupt();
+
+        long now = System.currentTimeMillis();
+        if (now - lastProgress >= PROGRESS_FREQ) {
+          lastProgress = now;
+          output.printProgress(now - start, pos, size);
+        }
+      }
+    }
+  }
+}
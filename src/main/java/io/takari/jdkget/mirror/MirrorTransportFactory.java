@@ -0,0 +1,45 @@
+package io.takari.jdkget.mirror;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Map;
+
+import io.takari.jdkget.ITransport;
+import io.takari.jdkget.ITransportFactory;
+import io.takari.jdkget.Throttle;
+
+/**
+ * Creates a {@link MirrorTransport} for the directory given as a <code>file:</code> url or a path in
+ * the {@link #PARAM_BASEURL} parameter.
+ */
+public class MirrorTransportFactory implements ITransportFactory {
+  private static final long serialVersionUID = 1L;
+
+  public static final String PARAM_HARDLINKS = "io.takari.jdkget.mirror.hardlinks";
+
+  @Override
+  public ITransport createTransport(Map<String, String> parameters) {
+    String baseUrl = parameters != null ? parameters.get(PARAM_BASEURL) : null;
+    if (baseUrl == null) {
+      throw new IllegalArgumentException("Mirror transport requires " + PARAM_BASEURL);
+    }
+    MirrorTransport transport = new MirrorTransport(toDirectory(baseUrl));
+    String hardlinks = parameters.get(PARAM_HARDLINKS);
+    if (hardlinks != null) {
+      transport.setHardlinks(Boolean.parseBoolean(hardlinks));
+    }
+    transport.setThrottle(Throttle.fromParameters(parameters));
+    return transport;
+  }
+
+  public static boolean isMirror(String baseUrl) {
+    return baseUrl != null && baseUrl.startsWith("file:");
+  }
+
+  static File toDirectory(String baseUrl) {
+    if (isMirror(baseUrl)) {
+      return new File(URI.create(baseUrl));
+    }
+    return new File(baseUrl);
+  }
+}
@@ -0,0 +1,194 @@
+package io.takari.jdkget.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * On-disk copy of the releases catalog, revalidated with If-None-Match/If-Modified-Since so an unchanged
+ * catalog costs a 304 instead of a download. A copy younger than the server's max-age, or
+ * {@link #DEFAULT_MAX_AGE} if it gives none, is used without asking the server at all, and a stale copy
+ * is still used if the server cannot be reached.
+ * <p>
+ * The directory defaults to <code>~/.jdkget/catalog</code> and can be changed with the
+ * <code>io.takari.jdkget.catalogCache</code> system property, or set to <code>none</code> to disable it.
+ */
+class CatalogCache {
+
+  static final String PROP_DIR = "io.takari.jdkget.catalogCache";
+  static final long DEFAULT_MAX_AGE = 10L * 60L * 1000L;
+
+  private static final Pattern MAX_AGE = Pattern.compile("max-age=(\\d+)");
+  // a year in seconds, anything longer is capped to it
+  private static final long MAX_MAX_AGE = 365L * 24L * 60L * 60L;
+
+  private final File dir;
+
+  CatalogCache(File dir) {
+    this.dir = dir;
+  }
+
+  /**
+   * Returns the cache configured through system properties, or null if it is disabled.
+   */
+  static CatalogCache getDefault() {
+    String d = System.getProperty(PROP_DIR);
+    if ("none".equals(d)) {
+      return null;
+    }
+    if (d == null) {
+      d = System.getProperty("user.home") + "/.jdkget/catalog";
+    }
+    return new CatalogCache(new File(d));
+  }
+
+  /**
+   * Returns a local file with the current catalog contents at url.
+   */
+  File fetch(String url, int timeout) throws IOException {
+    String key = Hashing.sha1().hashString(url, StandardCharsets.UTF_8).toString();
+    File data = new File(dir, key + ".yml");
+    File metaFile = new File(dir, key + ".properties");
+    Properties meta = loadMeta(metaFile, data);
+
+    long now = System.currentTimeMillis();
+    if (meta != null
+        && now < Long.parseLong(meta.getProperty("fetched")) + Long.parseLong(meta.getProperty("maxAge"))) {
+      return data;
+    }
+
+    try {
+      HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+      conn.setRequestMethod("GET");
+      conn.setAllowUserInteraction(false);
+      conn.setUseCaches(false);
+      conn.setConnectTimeout(timeout);
+      conn.setReadTimeout(timeout);
+      if (meta != null) {
+        if (meta.getProperty("etag") != null) {
+          conn.setRequestProperty("If-None-Match", meta.getProperty("etag"));
+        }
+        if (meta.getProperty("lastModified") != null) {
+          conn.setRequestProperty("If-Modified-Since", meta.getProperty("lastModified"));
+        }
+      }
+
+      int code = conn.getResponseCode();
+      if (code == HttpURLConnection.HTTP_NOT_MODIFIED && meta != null) {
+        conn.getInputStream().close();
+        meta.setProperty("fetched", Long.toString(now));
+        meta.setProperty("maxAge", Long.toString(maxAge(conn)));
+        saveMeta(metaFile, meta);
+        return data;
+      }
+      if (code != HttpURLConnection.HTTP_OK) {
+        throw new IOException("Server responded with " + code + " for " + url);
+      }
+
+      Files.createDirectories(dir.toPath());
+      File tmp = new File(dir, key + "." + UUID.randomUUID() + ".tmp");
+      try {
+        try (InputStream in = conn.getInputStream(); OutputStream out = new FileOutputStream(tmp)) {
+          byte[] buf = new byte[64 * 1024];
+          int l;
+          while ((l = in.read(buf)) != -1) {
+            out.write(buf, 0, l);
+          }
+        }
+        Files.move(tmp.toPath(), data.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        tmp.delete();
+      }
+
+      meta = new Properties();
+      meta.setProperty("url", url);
+      meta.setProperty("length", Long.toString(data.length()));
+      meta.setProperty("fetched", Long.toString(now));
+      meta.setProperty("maxAge", Long.toString(maxAge(conn)));
+      if (conn.getHeaderField("ETag") != null) {
+        meta.setProperty("etag", conn.getHeaderField("ETag"));
+      }
+      if (conn.getHeaderField("Last-Modified") != null) {
+        meta.setProperty("lastModified", conn.getHeaderField("Last-Modified"));
+      }
+      saveMeta(metaFile, meta);
+      return data;
+    } catch (IOException e) {
+      if (meta != null) {
+        // stale is better than nothing
+        return data;
+      }
+      throw e;
+    }
+  }
+
+  private static long maxAge(HttpURLConnection conn) {
+    String cc = conn.getHeaderField("Cache-Control");
+    if (cc != null) {
+      if (cc.contains("no-cache") || cc.contains("no-store")) {
+        return 0;
+      }
+      Matcher m = MAX_AGE.matcher(cc);
+      if (m.find()) {
+        try {
+          return Math.min(Long.parseLong(m.group(1)), MAX_MAX_AGE) * 1000L;
+        } catch (NumberFormatException e) {
+          return MAX_MAX_AGE * 1000L;
+        }
+      }
+    }
+    return DEFAULT_MAX_AGE;
+  }
+
+  /**
+   * Reads the metadata, returns null unless it describes the data file as it is, which another process
+   * may have replaced meanwhile, and has all the times it needs.
+   */
+  private static Properties loadMeta(File metaFile, File data) {
+    if (!metaFile.isFile() || !data.isFile()) {
+      return null;
+    }
+    Properties meta = new Properties();
+    try (InputStream in = new FileInputStream(metaFile)) {
+      meta.load(in);
+      if (Long.parseLong(meta.getProperty("length", "-1")) != data.length()) {
+        return null;
+      }
+      if (Long.parseLong(meta.getProperty("fetched", "-1")) < 0
+          || Long.parseLong(meta.getProperty("maxAge", "-1")) < 0) {
+        return null;
+      }
+      return meta;
+    } catch (IOException | NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private void saveMeta(File metaFile, Properties meta) throws IOException {
+    Files.createDirectories(dir.toPath());
+    File tmp = new File(dir, metaFile.getName() + "." + UUID.randomUUID() + ".tmp");
+    try {
+      try (OutputStream out = new FileOutputStream(tmp)) {
+        meta.store(out, null);
+      }
+      Files.move(tmp.toPath(), metaFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      tmp.delete();
+    }
+  }
+}
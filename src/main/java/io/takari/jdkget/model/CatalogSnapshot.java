@@ -0,0 +1,185 @@
+package io.takari.jdkget.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import io.takari.jdkget.Arch;
+
+/**
+ * Compact binary form of a parsed releases catalog. The build writes one next to the bundled yaml so the
+ * built-in catalog loads without going through Jackson. The snapshot records a checksum of the yaml it
+ * was made from and is ignored if the yaml has changed since.
+ */
+public class CatalogSnapshot {
+
+  private static final int MAGIC = 0x4a444b43; // JDKC
+  private static final int FORMAT = 2;
+
+  /**
+   * Writes the snapshot of a yaml catalog: <code>CatalogSnapshot &lt;yaml&gt; &lt;snapshot&gt;</code>.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: CatalogSnapshot <java_releases.yml> <snapshot>");
+      System.exit(1);
+    }
+    File yaml = new File(args[0]);
+    JdkReleases rels;
+    try (InputStream in = new FileInputStream(yaml)) {
+      rels = JdkReleases.read(in);
+    }
+    long crc;
+    try (InputStream in = new FileInputStream(yaml)) {
+      crc = crc(in);
+    }
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(args[1]))) {
+      write(rels, crc, out);
+    }
+  }
+
+  static long crc(InputStream in) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buf = new byte[64 * 1024];
+    int l;
+    while ((l = in.read(buf)) != -1) {
+      crc.update(buf, 0, l);
+    }
+    return crc.getValue();
+  }
+
+  static void write(JdkReleases rels, long sourceCrc, OutputStream os) throws IOException {
+    DataOutputStream out = new DataOutputStream(os);
+    out.writeInt(MAGIC);
+    out.writeShort(FORMAT);
+    out.writeLong(sourceCrc);
+    writeString(out, rels.getTransport());
+
+    out.writeShort(rels.jces.size());
+    for (JCE jce : rels.jces) {
+      out.writeShort(jce.getMajorVersion());
+      out.writeUTF(jce.getPath());
+    }
+
+    out.writeShort(rels.getReleases().size());
+    for (JdkRelease r : rels.getReleases()) {
+      out.writeUTF(r.getSpec());
+      out.writeBoolean(r.isPsu());
+
+      out.writeByte(r.binaries.size());
+      for (Map.Entry<BinaryType, Map<Arch, List<JdkBinary>>> te : r.binaries.entrySet()) {
+        out.writeByte(te.getKey() == null ? -1 : te.getKey().ordinal());
+        int count = te.getValue().values().stream().mapToInt(List::size).sum();
+        out.writeShort(count);
+        for (List<JdkBinary> bins : te.getValue().values()) {
+          for (JdkBinary bin : bins) {
+            out.writeByte(bin.getArch().ordinal());
+            out.writeUTF(bin.getPath());
+            writeHex(out, bin.getMd5());
+            writeHex(out, bin.getSha256());
+            out.writeLong(bin.getSize());
+          }
+        }
+      }
+    }
+    out.flush();
+  }
+
+  /**
+   * Reads a snapshot, returns null if it was not made from a yaml with the given checksum.
+   */
+  static JdkReleases read(InputStream is, long sourceCrc) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+    if (in.readInt() != MAGIC || in.readShort() != FORMAT || in.readLong() != sourceCrc) {
+      return null;
+    }
+    JdkReleases.Builder b = JdkReleases.newBuilder();
+    b.transport(readString(in));
+
+    int jces = in.readShort();
+    for (int i = 0; i < jces; i++) {
+      b.addJCE(in.readShort(), in.readUTF());
+    }
+
+    BinaryType[] types = BinaryType.values();
+    Arch[] arches = Arch.values();
+    int releases = in.readShort();
+    for (int i = 0; i < releases; i++) {
+      String version = in.readUTF();
+      if (in.readBoolean()) {
+        b.setPSU(version);
+      }
+      int typeCount = in.readByte();
+      for (int t = 0; t < typeCount; t++) {
+        int type = in.readByte();
+        int count = in.readShort();
+        for (int j = 0; j < count; j++) {
+          Arch arch = arches[in.readByte()];
+          String path = in.readUTF();
+          String md5 = readHex(in);
+          String sha256 = readHex(in);
+          long size = in.readLong();
+          b.addBinary(version, type == -1 ? null : types[type], arch, path, md5, sha256, size);
+        }
+      }
+    }
+    return b.build();
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) {
+      out.writeUTF(s);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  // digests are stored as raw bytes, halving their size; anything that is not lowercase hex is kept as text
+  private static void writeHex(DataOutputStream out, String hex) throws IOException {
+    if (hex == null) {
+      out.writeByte(0);
+    } else if (hex.length() % 2 == 0 && hex.length() <= 254 && hex.matches("[0-9a-f]*")) {
+      out.writeByte(1);
+      out.writeByte(hex.length() / 2);
+      for (int i = 0; i < hex.length(); i += 2) {
+        out.writeByte(Integer.parseInt(hex.substring(i, i + 2), 16));
+      }
+    } else {
+      out.writeByte(2);
+      out.writeUTF(hex);
+    }
+  }
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private static String readHex(DataInputStream in) throws IOException {
+    int kind = in.readByte();
+    if (kind == 0) {
+      return null;
+    }
+    if (kind == 2) {
+      return in.readUTF();
+    }
+    int len = in.readUnsignedByte();
+    char[] c = new char[len * 2];
+    for (int i = 0; i < len; i++) {
+      int v = in.readUnsignedByte();
+      c[i * 2] = HEX[v >> 4];
+      c[i * 2 + 1] = HEX[v & 0xf];
+    }
+    return new String(c);
+  }
+}
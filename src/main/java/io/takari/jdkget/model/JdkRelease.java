@@ -5,6 +5,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,20 +18,37 @@ public class JdkRelease implements Serializable {
   private static final long serialVersionUID = 1L;
 
   private final JdkVersion version;
+  // the version as the catalog spells it, which shortBuild() does not always give back (7u0 becomes 7)
+  private final String spec;
   private final boolean psu;
   final Map<BinaryType, Map<Arch, List<JdkBinary>>> binaries;
+  // best unpackable binary per type and arch, picked once instead of on every lookup
+  private final Map<BinaryType, Map<Arch, JdkBinary>> unpackables;
 
-  JdkRelease(JdkVersion version, boolean psu, Map<BinaryType, List<JdkBinary>> binaries) {
-    this.version = version;
+  JdkRelease(String spec, boolean psu, Map<BinaryType, List<JdkBinary>> binaries) {
+    this.version = JdkVersion.parse(spec);
+    this.spec = spec;
     this.psu = psu;
 
     Map<BinaryType, Map<Arch, List<JdkBinary>>> binMap = new LinkedHashMap<>();
+    Map<BinaryType, Map<Arch, JdkBinary>> unpackMap = new LinkedHashMap<>();
     binaries.entrySet().forEach(e -> {
       e.getValue().forEach(b -> b.setRelease(this));
-      binMap.put(e.getKey(), Collections.unmodifiableMap(toMap(e.getValue())));
+      Map<Arch, List<JdkBinary>> archBins = toMap(e.getValue());
+      binMap.put(e.getKey(), Collections.unmodifiableMap(archBins));
+
+      Map<Arch, JdkBinary> best = new EnumMap<>(Arch.class);
+      archBins.forEach((arch, bins) -> {
+        JdkBinary bin = selectUnpackable(bins);
+        if (bin != null) {
+          best.put(arch, bin);
+        }
+      });
+      unpackMap.put(e.getKey(), best);
     });
 
     this.binaries = Collections.unmodifiableMap(binMap);
+    this.unpackables = unpackMap;
   }
 
   private Map<Arch, List<JdkBinary>> toMap(List<JdkBinary> binaries) {
@@ -49,6 +67,10 @@ public class JdkRelease implements Serializable {
     return version;
   }
 
+  String getSpec() {
+    return spec;
+  }
+
   public boolean isPsu() {
     return psu;
   }
@@ -76,31 +98,33 @@ public class JdkRelease implements Serializable {
   }
 
   public JdkBinary getUnpackableBinary(BinaryType type, Arch arch) throws IOException {
-    List<JdkBinary> bins = getBinaries(type, arch);
+    Map<Arch, JdkBinary> typeBins = unpackables.get(type);
+    return typeBins == null ? null : typeBins.get(arch);
+  }
+
+  private static JdkBinary selectUnpackable(List<JdkBinary> bins) {
     JdkBinary match = null;
-    if (bins != null) {
-      int lowest = Integer.MAX_VALUE;
-      outer: for (JdkBinary bin : bins) {
-        String fname = filename(bin.getPath()).toLowerCase();
-
-        for (String skip : NON_UNPACKABLES) {
-          if (fname.endsWith(skip)) {
-            continue outer;
-          }
-        }
+    int lowest = Integer.MAX_VALUE;
+    outer: for (JdkBinary bin : bins) {
+      String fname = filename(bin.getPath()).toLowerCase();
 
-        int idx = 0;
-        for (String ext : UNPACKABLES) {
-          if (fname.endsWith(ext)) {
-            break;
-          }
-          idx++;
+      for (String skip : NON_UNPACKABLES) {
+        if (fname.endsWith(skip)) {
+          continue outer;
         }
+      }
 
-        if (idx < UNPACKABLES.size() && idx < lowest) {
-          lowest = idx;
-          match = bin;
+      int idx = 0;
+      for (String ext : UNPACKABLES) {
+        if (fname.endsWith(ext)) {
+          break;
         }
+        idx++;
+      }
+
+      if (idx < UNPACKABLES.size() && idx < lowest) {
+        lowest = idx;
+        match = bin;
       }
     }
     return match;
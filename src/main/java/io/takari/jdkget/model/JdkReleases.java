@@ -1,5 +1,6 @@
 package io.takari.jdkget.model;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
@@ -13,7 +14,9 @@ import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.takari.jdkget.Arch;
 import io.takari.jdkget.IOutput;
@@ -24,41 +27,82 @@ public class JdkReleases implements Serializable {
 
   private static final long serialVersionUID = 1L;
   private static final String JAVA_RELEASES_CNF_FILENAME = "java_releases_v1.yml";
+  private static final String JAVA_RELEASES_SNAPSHOT_FILENAME = "java_releases_v1.bin";
   public static final String ORACLE_RELEASES =
       "https://raw.githubusercontent.com/takari/jdkget/master/src/main/resources/" + JAVA_RELEASES_CNF_FILENAME;
-  private static final long MAX_CACHE = 24L * 60L * 60L * 1000L; // cache it for a day
+  private static final long MAX_CACHE = 24L * 60L * 60L * 1000L; // refresh it after a day
+  private static final long MAX_STALE = 7L * MAX_CACHE; // but never serve anything older than a week
+  private static final long REFRESH_RETRY = 10L * 60L * 1000L;
   private static final int TIMEOUT_VALUE = 10000;
 
   private static final Object mutex = new Object();
+  private static final AtomicBoolean refreshing = new AtomicBoolean();
 
   private static volatile JdkReleases cached;
   private static volatile long time;
+  private static volatile long nextRefresh;
 
   public static JdkReleases get() throws IOException {
     return get(StdOutput.INSTANCE);
   }
 
+  /**
+   * Returns the cached releases. Once they are older than a day they are still returned right away while
+   * a background thread fetches fresh ones; only the first call, or one finding them older than a week,
+   * waits for the catalog to load.
+   */
   public static JdkReleases get(IOutput output) throws IOException {
     JdkReleases c = cached;
-    long t = System.currentTimeMillis() - MAX_CACHE;
-    if (c == null || t > time) {
-      synchronized (mutex) {
-        if (c == null || t > time) {
-          cached = c = readCached(output);
-          time = System.currentTimeMillis();
-        }
+    long now = System.currentTimeMillis();
+    if (c != null && now - time <= MAX_STALE) {
+      if (now - time > MAX_CACHE && now >= nextRefresh) {
+        refreshInBackground(output);
+      }
+      return c;
+    }
+    synchronized (mutex) {
+      c = cached;
+      if (c == null || System.currentTimeMillis() - time > MAX_STALE) {
+        cached = c = readCached(output);
+        time = System.currentTimeMillis();
       }
     }
     return c;
   }
 
-  private static final JdkReleases readCached(IOutput output) throws IOException {
+  private static void refreshInBackground(IOutput output) {
+    if (!refreshing.compareAndSet(false, true)) {
+      return;
+    }
+    Thread t = new Thread(() -> {
+      try {
+        JdkReleases fresh = readFresh();
+        synchronized (mutex) {
+          cached = fresh;
+          time = System.currentTimeMillis();
+        }
+      } catch (Exception e) {
+        // keep serving what we have, it is still within the staleness bound
+        output.error("Warning: Unable to refresh " + JAVA_RELEASES_CNF_FILENAME + ": " + e);
+        nextRefresh = System.currentTimeMillis() + REFRESH_RETRY;
+      } finally {
+        refreshing.set(false);
+      }
+    }, "jdkget-releases-refresh");
+    t.setDaemon(true);
+    t.start();
+  }
+
+  private static JdkReleases readFresh() throws IOException {
     if ("builtin".equals(System.getProperty("io.takari.jdkget.releaseList"))) {
       return readFromClasspath();
     }
+    return readFromGithub();
+  }
 
+  private static final JdkReleases readCached(IOutput output) throws IOException {
     try {
-      return readFromGithub();
+      return readFresh();
     } catch (Exception e) {
       output.error("Warning: Unable to retreive " + JAVA_RELEASES_CNF_FILENAME +
           " from Github. Using built-in JDK list.");
@@ -71,6 +115,13 @@ public class JdkReleases implements Serializable {
   }
 
   public static JdkReleases readFromUrl(String url) throws IOException {
+    CatalogCache cache = url.startsWith("http:") || url.startsWith("https:") ? CatalogCache.getDefault() : null;
+    if (cache != null) {
+      try (InputStream in = new FileInputStream(cache.fetch(url, TIMEOUT_VALUE))) {
+        return read(in);
+      }
+    }
+
     URLConnection conn = new URL(url).openConnection();
     if (conn instanceof HttpURLConnection) {
       ((HttpURLConnection) conn).setRequestMethod("GET");
@@ -87,19 +138,42 @@ public class JdkReleases implements Serializable {
   }
 
   public static final JdkReleases readFromClasspath() throws IOException {
-    try (InputStream in = JdkReleases.class.getClassLoader()
-        .getResourceAsStream(JAVA_RELEASES_CNF_FILENAME)) {
+    ClassLoader cl = JdkReleases.class.getClassLoader();
+    JdkReleases snapshot = readSnapshot(cl);
+    if (snapshot != null) {
+      return snapshot;
+    }
+    try (InputStream in = cl.getResourceAsStream(JAVA_RELEASES_CNF_FILENAME)) {
       return new JdkReleasesParser().parse(in);
     }
   }
 
+  /**
+   * Loads the binary snapshot the build writes next to the yaml, null if there is none or it is outdated.
+   */
+  private static JdkReleases readSnapshot(ClassLoader cl) {
+    try (InputStream snapshot = cl.getResourceAsStream(JAVA_RELEASES_SNAPSHOT_FILENAME)) {
+      if (snapshot == null) {
+        return null;
+      }
+      long crc;
+      try (InputStream in = cl.getResourceAsStream(JAVA_RELEASES_CNF_FILENAME)) {
+        crc = CatalogSnapshot.crc(in);
+      }
+      return CatalogSnapshot.read(snapshot, crc);
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
   public static JdkReleases read(InputStream inputStream) throws IOException {
     return new JdkReleasesParser().parse(inputStream);
   }
 
   private String transport;
   private List<JdkRelease> releases;
-  private List<JCE> jces;
+  List<JCE> jces;
+  private transient volatile ReleaseIndex index;
 
   JdkReleases(String transport, List<JdkRelease> releases, List<JCE> jces) {
     this.transport = transport;
@@ -135,58 +209,47 @@ public class JdkReleases implements Serializable {
   }
 
   public JdkRelease latest() {
-    return releases.stream().filter(r -> !r.isPsu()).findAny().get();
+    JdkRelease latest = index().latest();
+    if (latest == null) {
+      throw new NoSuchElementException("No non-PSU release available");
+    }
+    return latest;
   }
 
   public JdkRelease latestInclPSU() {
     return releases.get(0);
   }
 
+  /**
+   * Returns all releases matching a {@link VersionRange} expression, newest first.
+   */
+  public List<JdkRelease> selectAll(String range) {
+    return VersionRange.parse(range).select(this);
+  }
+
   public JdkRelease select(String ver) {
     return ver == null || ver.equals("latest") ? latest() : select(JdkVersion.parse(ver));
   }
 
+  /**
+   * Returns the newest release matching the version. A version with only a major, or with a major and a
+   * minor where releases have a security component, matches the newest non-PSU release with them. A
+   * version without a build number matches any build.
+   */
   public JdkRelease select(JdkVersion ver) {
-    for (JdkRelease rel : releases) {
-      JdkVersion o = rel.getVersion();
-      if (o.major > ver.major) {
-        continue;
-      }
-      if (o.major < ver.major) {
-        break;
-      }
-      if (ver.minor == -1) {
-        if (rel.isPsu()) {
-          continue;
-        }
-        return rel;
-      }
-      if (o.minor > ver.minor) {
-        continue;
-      }
-      if (o.minor < ver.minor) {
-        break;
-      }
-      if (ver.security == -1 && o.security != -1) {
-        if (rel.isPsu()) {
-          continue;
-        }
-        return rel;
-      }
-      if (o.security > ver.security) {
-        continue;
-      }
-      if (o.security < ver.security) {
-        break;
-      }
-      if (ver.buildNumber.isEmpty()) {
-        return rel;
-      }
-      if (o.buildNumber.equals(ver.buildNumber)) {
-        return rel;
-      }
+    JdkRelease rel = index().select(ver);
+    if (rel == null) {
+      throw new IllegalStateException("Unable to find jdk release for version " + ver);
+    }
+    return rel;
+  }
+
+  ReleaseIndex index() {
+    ReleaseIndex idx = index;
+    if (idx == null) {
+      index = idx = new ReleaseIndex(releases);
     }
-    throw new IllegalStateException("Unable to find jdk release for version " + ver);
+    return idx;
   }
 
   public static Builder newBuilder() {
@@ -197,7 +260,7 @@ public class JdkReleases implements Serializable {
     Builder b = new Builder();
     b.transport(rels.getTransport());
     for (JdkRelease r : rels.getReleases()) {
-      String v = r.getVersion().shortBuild();
+      String v = r.getSpec();
       if (r.isPsu()) {
         b.setPSU(v);
       }
@@ -276,7 +339,7 @@ public class JdkReleases implements Serializable {
     public JdkReleases build() {
       List<JdkRelease> rels = new ArrayList<>();
 
-      binaries.entrySet().stream().forEach(e -> rels.add(new JdkRelease(JdkVersion.parse(e.getKey()), // version
+      binaries.entrySet().stream().forEach(e -> rels.add(new JdkRelease(e.getKey(), // version
           psuVersions != null && psuVersions.contains(e.getKey()), // psu
           e.getValue()))// bins
       );
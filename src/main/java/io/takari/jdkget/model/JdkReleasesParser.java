@@ -2,90 +2,333 @@ package io.takari.jdkget.model;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 
 import io.takari.jdkget.Arch;
-import io.takari.jdkget.model.JavaReleasesData.BinaryData;
-import io.takari.jdkget.model.JavaReleasesData.DefaultsData;
 import io.takari.jdkget.model.JdkReleases.Builder;
 
+/**
+ * Reads a releases yaml token by token straight into a {@link JdkReleases.Builder}, without binding it to
+ * {@link JavaReleasesData} first. Url templates are compiled once per distinct template and arch names
+ * are resolved once per distinct name.
+ */
 public class JdkReleasesParser {
+
+  private static final YAMLFactory YAML = new YAMLFactory();
+
+  // fields of a binary entry, kept until the release it belongs to is complete
+  private static final int B_ARCH = 0, B_EXT = 1, B_VERSION = 2, B_TYPENAME = 3, B_URL = 4, B_MD5 = 5,
+      B_SHA256 = 6, B_SIZE = 7, B_TYPE = 8, B_FIELDS = 9;
+
+  private final Map<String, Template> templates = new HashMap<>();
+  private final Map<String, Arch> arches = new HashMap<>();
+
+  private String defaultUrl;
+  private final Map<String, String> typeNames = new HashMap<>();
+  private final Map<String, String> archCls = new HashMap<>();
+
   public JdkReleases parse(InputStream in) throws IOException {
-    ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
-    JavaReleasesData jrd = mapper.readValue(in, JavaReleasesData.class);
-    
     JdkReleases.Builder builder = JdkReleases.newBuilder();
-    buildReleases(jrd, builder);
+    try (JsonParser p = YAML.createParser(in)) {
+      if (p.nextToken() != JsonToken.START_OBJECT) {
+        return builder.build();
+      }
+
+      boolean defaults = false;
+      TokenBuffer releases = null;
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.getCurrentName();
+        JsonToken t = p.nextToken();
+        if (t == JsonToken.VALUE_NULL) {
+          continue;
+        }
+        switch (field) {
+          case "defaults":
+            parseDefaults(p, builder);
+            defaults = true;
+            break;
+          case "jce":
+            parseJces(p, builder);
+            break;
+          case "java":
+            if (defaults) {
+              parseReleases(p, builder);
+            } else {
+              // releases need the defaults, keep the tokens until they have been read
+              releases = new TokenBuffer(p);
+              releases.copyCurrentStructure(p);
+            }
+            break;
+          default:
+            p.skipChildren();
+        }
+      }
+
+      if (releases != null) {
+        try (JsonParser rp = releases.asParser()) {
+          rp.nextToken();
+          parseReleases(rp, builder);
+        }
+      }
+    }
     return builder.build();
   }
-  
-  private void buildReleases(JavaReleasesData jrd, Builder builder) {
-    if(jrd == null) { return; }
-
-    DefaultsData defaults = jrd.getDefaults();
-    
-    builder.transport(defaults.getTransport());
-
-    if(jrd.getJces() != null) {
-      jrd.getJces().stream()
-        .forEach(j -> 
-          builder.addJCE(Integer.parseInt(j.getVersion()), j.getUrl())
-         );
+
+  private void parseDefaults(JsonParser p, Builder builder) throws IOException {
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.getCurrentName();
+      p.nextToken();
+      switch (field) {
+        case "transport":
+          builder.transport(p.getValueAsString());
+          break;
+        case "url":
+          defaultUrl = p.getValueAsString();
+          break;
+        case "typeName":
+          readMap(p, typeNames);
+          break;
+        case "archCls":
+          readMap(p, archCls);
+          break;
+        default:
+          p.skipChildren();
+      }
+    }
+  }
+
+  private static void readMap(JsonParser p, Map<String, String> map) throws IOException {
+    if (p.getCurrentToken() != JsonToken.START_OBJECT) {
+      p.skipChildren();
+      return;
+    }
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String key = p.getCurrentName();
+      p.nextToken();
+      map.put(key, p.getValueAsString());
     }
+  }
+
+  private static void parseJces(JsonParser p, Builder builder) throws IOException {
+    while (p.nextToken() == JsonToken.START_OBJECT) {
+      String version = null;
+      String url = null;
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.getCurrentName();
+        p.nextToken();
+        if (field.equals("version")) {
+          version = p.getValueAsString();
+        } else if (field.equals("url")) {
+          url = p.getValueAsString();
+        } else {
+          p.skipChildren();
+        }
+      }
+      builder.addJCE(Integer.parseInt(version), url);
+    }
+  }
+
+  private void parseReleases(JsonParser p, Builder builder) throws IOException {
+    List<String[]> bins = new ArrayList<>();
+    while (p.nextToken() == JsonToken.START_OBJECT) {
+      String version = null;
+      String url = null;
+      boolean psu = false;
+      bins.clear();
 
-    if(jrd.getReleases() == null) { return; }
-    
-    jrd.getReleases().forEach(r -> 
-    {
-      String v = r.getVersion();
-      boolean psu = r.getPsu() == null ? false : r.getPsu().booleanValue();
-      String url = r.getUrl() == null ? defaults.getUrl() : r.getUrl();
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.getCurrentName();
+        p.nextToken();
+        switch (field) {
+          case "version":
+            version = p.getValueAsString();
+            break;
+          case "url":
+            url = p.getValueAsString();
+            break;
+          case "psu":
+            psu = p.getValueAsBoolean();
+            break;
+          case "jdk":
+            parseBinaries(p, BinaryType.JDK, bins);
+            break;
+          case "jre":
+            parseBinaries(p, BinaryType.JRE, bins);
+            break;
+          case "serverjre":
+            parseBinaries(p, BinaryType.SERVERJRE, bins);
+            break;
+          default:
+            p.skipChildren();
+        }
+      }
 
       if (psu) {
-        builder.setPSU(v);
+        builder.setPSU(version);
+      }
+      // binaries were listed by type before, keep that order
+      for (BinaryType type : BinaryType.values()) {
+        for (String[] b : bins) {
+          if (b[B_TYPE].equals(type.getName())) {
+            addBinary(builder, version, url == null ? defaultUrl : url, type, b);
+          }
+        }
+      }
+    }
+  }
+
+  private static void parseBinaries(JsonParser p, BinaryType type, List<String[]> bins) throws IOException {
+    if (p.getCurrentToken() != JsonToken.START_ARRAY) {
+      p.skipChildren();
+      return;
+    }
+    while (p.nextToken() == JsonToken.START_OBJECT) {
+      String[] b = new String[B_FIELDS];
+      b[B_TYPE] = type.getName();
+      while (p.nextToken() == JsonToken.FIELD_NAME) {
+        String field = p.getCurrentName();
+        p.nextToken();
+        int idx;
+        switch (field) {
+          case "arch":
+            idx = B_ARCH;
+            break;
+          case "ext":
+            idx = B_EXT;
+            break;
+          case "version":
+            idx = B_VERSION;
+            break;
+          case "typeName":
+            idx = B_TYPENAME;
+            break;
+          case "url":
+            idx = B_URL;
+            break;
+          case "md5":
+            idx = B_MD5;
+            break;
+          case "sha256":
+            idx = B_SHA256;
+            break;
+          case "size":
+            idx = B_SIZE;
+            break;
+          default:
+            p.skipChildren();
+            continue;
+        }
+        b[idx] = p.getValueAsString();
       }
+      bins.add(b);
+    }
+  }
 
-      buildReleaseBinary(v, url, r.getJdk(), builder, defaults, BinaryType.JDK.getName());
-      buildReleaseBinary(v, url, r.getJre(), builder, defaults, BinaryType.JRE.getName());
-      buildReleaseBinary(v, url, r.getServerJre(), builder, defaults, BinaryType.SERVERJRE.getName());
-    });
+  private void addBinary(Builder builder, String ver, String urlTemplate, BinaryType type, String[] b) {
+    String arch = b[B_ARCH];
+    String binVersion = b[B_VERSION] == null ? ver : b[B_VERSION];
+    String typeName = b[B_TYPENAME] == null ? typeNames.get(type.getName()) : b[B_TYPENAME];
+    String url = b[B_URL] == null ? urlTemplate : b[B_URL];
+    long size = b[B_SIZE] == null ? -1 : Long.parseLong(b[B_SIZE].trim());
 
+    String path = template(url).expand(typeName, JdkVersion.parse(binVersion), arch, b[B_EXT]);
+    builder.addBinary(ver, type, arch(arch), path, b[B_MD5], b[B_SHA256], size);
   }
-  
-  private void buildReleaseBinary(String ver, String urlTemplate, List<BinaryData> bins, Builder builder,
-      DefaultsData defaults, String type) {
-    if(bins == null) { return; }
-    
-    bins.forEach(b -> {
-      String arch = b.getArch();
-
-      String clsName = defaults.getArchCls().get(arch);
-      if(clsName == null) {
+
+  private Arch arch(String arch) {
+    Arch cls = arches.get(arch);
+    if (cls == null) {
+      String clsName = archCls.get(arch);
+      if (clsName == null) {
         throw new IllegalStateException("No classifier for arch " + arch);
       }
-      Arch cls = Arch.valueOf(clsName.toUpperCase());
-      String binVersion = b.getVersion() == null ? ver : b.getVersion();
-      String typeName = b.getTypeName() == null ? defaults.getTypeName().get(type) : b.getTypeName();
-      String ext = b.getExt();
-      String md5 = b.getMd5();
-      String sha256 = b.getSha256();
-      long size = b.getSize() == null ? -1 : b.getSize();
-      String url = b.getUrl() == null ? urlTemplate : b.getUrl();
-      
-      String path = path(url, typeName, JdkVersion.parse(binVersion), arch, ext);
-
-      builder.addBinary(ver, BinaryType.forName(type), cls, path, md5, sha256, size);
-    });
+      cls = Arch.valueOf(clsName.toUpperCase());
+      arches.put(arch, cls);
+    }
+    return cls;
+  }
+
+  private Template template(String url) {
+    Template t = templates.get(url);
+    if (t == null) {
+      templates.put(url, t = new Template(url));
+    }
+    return t;
   }
 
-  private String path(String template, String typeName, JdkVersion ver, String arch, String ext) {
-    return template //
-        .replace("${typeName}", typeName) //
-        .replace("${version}", ver.shortVersion()) //
-        .replace("${build}", ver.buildNumber == null ? "" : ver.buildNumber) //ignore build if not oracle 
-        .replace("${arch}", arch) //
-        .replace("${ext}", ext);
+  /**
+   * A url template split at its <code>${typeName}</code>, <code>${version}</code>, <code>${build}</code>,
+   * <code>${arch}</code> and <code>${ext}</code> placeholders, other text is kept as is.
+   */
+  static class Template {
+    private static final String[] VARS = {"typeName", "version", "build", "arch", "ext"};
+
+    private final String template;
+    private final List<String> literals = new ArrayList<>();
+    private final List<Integer> vars = new ArrayList<>();
+
+    Template(String template) {
+      this.template = template;
+      StringBuilder literal = new StringBuilder();
+      int i = 0;
+      while (i < template.length()) {
+        int var = template.startsWith("${", i) ? var(template, i + 2) : -1;
+        if (var == -1) {
+          literal.append(template.charAt(i++));
+          continue;
+        }
+        literals.add(literal.toString());
+        literal.setLength(0);
+        vars.add(var);
+        i += VARS[var].length() + 3;
+      }
+      literals.add(literal.toString());
+    }
+
+    private static int var(String template, int start) {
+      for (int v = 0; v < VARS.length; v++) {
+        if (template.startsWith(VARS[v], start) && template.startsWith("}", start + VARS[v].length())) {
+          return v;
+        }
+      }
+      return -1;
+    }
+
+    String expand(String typeName, JdkVersion ver, String arch, String ext) {
+      StringBuilder sb = new StringBuilder(template.length() + 32);
+      for (int i = 0; i < vars.size(); i++) {
+        sb.append(literals.get(i));
+        String value;
+        switch (vars.get(i)) {
+          case 0:
+            value = typeName;
+            break;
+          case 1:
+            value = ver.shortVersion();
+            break;
+          case 2:
+            value = ver.buildNumber == null ? "" : ver.buildNumber; // ignore build if not oracle
+            break;
+          case 3:
+            value = arch;
+            break;
+          default:
+            value = ext;
+        }
+        if (value == null) {
+          throw new IllegalStateException("No value for ${" + VARS[vars.get(i)] + "} in " + template);
+        }
+        sb.append(value);
+      }
+      return sb.append(literals.get(vars.size())).toString();
+    }
   }
 }
@@ -1,6 +1,8 @@
 package io.takari.jdkget.model;
 
 import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -12,13 +14,30 @@ public abstract class JdkVersion implements Comparable<JdkVersion>, Serializable
   public final int security;
   public final String buildNumber;
 
+  // major, minor, security and build packed in that order so that comparing versions is comparing longs
+  private final long sortKey;
+
   protected JdkVersion(int major, int minor, int security, String buildNumber) {
     this.major = major;
     this.minor = minor;
     this.security = security;
     this.buildNumber = buildNumber;
+    this.sortKey = sortKey(major, minor, security, buildNum(buildNumber));
+  }
+
+  private static long sortKey(int major, int minor, int security, int build) {
+    return (component(major, 10) << 52) | (component(minor, 16) << 36) | (component(security, 16) << 20)
+        | Math.min(Math.max(build, 0), (1 << 20) - 1);
+  }
+
+  // offset by one so that missing components (-1) sort first, clamped to the bits they are given
+  private static long component(int c, int bits) {
+    return Math.min(Math.max(c + 1L, 0), (1L << bits) - 1);
   }
 
+  private static final int CACHE_SIZE = 4096;
+  private static final Map<String, JdkVersion> cache = new ConcurrentHashMap<>();
+
   public abstract String shortBuild();
 
   public abstract String shortVersion();
@@ -33,7 +52,21 @@ public abstract class JdkVersion implements Comparable<JdkVersion>, Serializable
     return longBuild();
   }
 
+  /**
+   * Parses a version string. Versions are immutable, so the same instance is returned for the same string.
+   */
   public static JdkVersion parse(String version) {
+    JdkVersion v = cache.get(version);
+    if (v == null) {
+      v = doParse(version);
+      if (cache.size() < CACHE_SIZE) {
+        cache.put(version, v);
+      }
+    }
+    return v;
+  }
+
+  private static JdkVersion doParse(String version) {
     {
       // 9+build
       // 9.<maj>.<min>+build
@@ -153,32 +186,32 @@ public abstract class JdkVersion implements Comparable<JdkVersion>, Serializable
   }
 
   int buildNum() {
-    String b = buildNumber;
-    if (b.startsWith("-")) {
-      b = b.substring(1);
+    return (int) (sortKey & ((1 << 20) - 1));
+  }
+
+  private static int buildNum(String b) {
+    int i = 0;
+    int n = b.length();
+    if (i < n && b.charAt(i) == '-') {
+      i++;
     }
-    if (b.startsWith("b") || b.startsWith("p")) {
-      b = b.substring(1);
+    if (i < n && (b.charAt(i) == 'b' || b.charAt(i) == 'p' || b.charAt(i) == '+')) {
+      i++;
     }
-    if (b.isEmpty()) {
-      return 0;
+    int num = 0;
+    for (; i < n; i++) {
+      char c = b.charAt(i);
+      if (c < '0' || c > '9') {
+        break;
+      }
+      num = num * 10 + (c - '0');
     }
-    return Integer.parseInt(b);
+    return num;
   }
 
   @Override
   public int compareTo(JdkVersion o) {
-    int c = major - o.major;
-    if (c == 0) {
-      c = minor - o.minor;
-    }
-    if (c == 0) {
-      c = security - o.security;
-    }
-    if (c == 0) {
-      c = buildNum() - o.buildNum();
-    }
-    return c;
+    return Long.compare(sortKey, o.sortKey);
   }
 
   @Override
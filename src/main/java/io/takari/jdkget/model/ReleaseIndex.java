@@ -0,0 +1,203 @@
+package io.takari.jdkget.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lookup tables over a release list sorted newest first, built once per catalog. Versions are packed into
+ * longs kept in sorted arrays, so a lookup is a binary search that allocates nothing. Packing keeps the
+ * order of {@link JdkVersion#compareTo} on major, minor and security.
+ */
+class ReleaseIndex {
+
+  private final List<JdkRelease> releases;
+
+  // major -> newest non-PSU release
+  private final long[] majorKeys;
+  private final int[] majorPos;
+
+  // major.minor -> newest non-PSU release, for versions that have a security component
+  private final long[] minorKeys;
+  private final int[] minorPos;
+
+  // major.minor.security -> first release, releases differing only in build are next to each other
+  private final long[] versionKeys;
+  private final int[] versionPos;
+
+  // packed version of every release, in release order and so descending
+  private final long[] keys;
+
+  private final JdkRelease latest;
+  private final int latestPos;
+
+  ReleaseIndex(List<JdkRelease> releases) {
+    this.releases = releases;
+    int n = releases.size();
+
+    keys = new long[n];
+    long[] mk = new long[n];
+    int[] mp = new int[n];
+    long[] nk = new long[n];
+    int[] np = new int[n];
+    long[] vk = new long[n];
+    int[] vp = new int[n];
+    int m = 0, mn = 0, v = 0;
+    int l = -1;
+
+    for (int i = 0; i < n; i++) {
+      JdkRelease rel = releases.get(i);
+      JdkVersion ver = rel.getVersion();
+
+      long key = pack(ver.major, ver.minor, ver.security);
+      keys[i] = key;
+      if (v == 0 || vk[v - 1] != key) {
+        vk[v] = key;
+        vp[v++] = i;
+      }
+      if (rel.isPsu()) {
+        continue;
+      }
+      if (l == -1) {
+        l = i;
+      }
+      key = pack(ver.major, 0, 0);
+      if (m == 0 || mk[m - 1] != key) {
+        mk[m] = key;
+        mp[m++] = i;
+      }
+      if (ver.security != -1) {
+        key = pack(ver.major, ver.minor, 0);
+        if (mn == 0 || nk[mn - 1] != key) {
+          nk[mn] = key;
+          np[mn++] = i;
+        }
+      }
+    }
+
+    latestPos = l;
+    latest = l == -1 ? null : releases.get(l);
+    reverse(mk, mp, m);
+    reverse(nk, np, mn);
+    reverse(vk, vp, v);
+    majorKeys = Arrays.copyOf(mk, m);
+    majorPos = Arrays.copyOf(mp, m);
+    minorKeys = Arrays.copyOf(nk, mn);
+    minorPos = Arrays.copyOf(np, mn);
+    versionKeys = Arrays.copyOf(vk, v);
+    versionPos = Arrays.copyOf(vp, v);
+  }
+
+  static final int WILDCARD = -2;
+  private static final long COMPONENT_MASK = (1L << 21) - 1;
+
+  /**
+   * Packs version components into a long ordered like the versions. Absent components (-1) sort before
+   * any present ones, {@link #WILDCARD} components after all of them.
+   */
+  static long pack(int major, int minor, int security) {
+    return (component(major) << 42) | (component(minor) << 21) | component(security);
+  }
+
+  private static long component(int c) {
+    return c == WILDCARD ? COMPONENT_MASK : c + 1L;
+  }
+
+  // tables are filled newest first, binary search needs them ascending
+  private static void reverse(long[] keys, int[] pos, int len) {
+    for (int i = 0, j = len - 1; i < j; i++, j--) {
+      long k = keys[i];
+      keys[i] = keys[j];
+      keys[j] = k;
+      int p = pos[i];
+      pos[i] = pos[j];
+      pos[j] = p;
+    }
+  }
+
+  private static int find(long[] keys, int[] pos, long key) {
+    int i = Arrays.binarySearch(keys, key);
+    return i < 0 ? -1 : pos[i];
+  }
+
+  JdkRelease latest() {
+    return latest;
+  }
+
+  int size() {
+    return keys.length;
+  }
+
+  JdkRelease get(int pos) {
+    return releases.get(pos);
+  }
+
+  int latestPosition() {
+    return latestPos;
+  }
+
+  /**
+   * Positions of the newest non-PSU release of every major version.
+   */
+  int[] latestPerMajor() {
+    int[] pos = new int[majorPos.length];
+    for (int i = 0; i < pos.length; i++) {
+      pos[i] = majorPos[pos.length - 1 - i];
+    }
+    return pos;
+  }
+
+  /**
+   * Returns the number of releases with a packed version of at least key, which are the first ones.
+   */
+  int countAtLeast(long key) {
+    int lo = 0, hi = keys.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (keys[mid] >= key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Returns the release matching a possibly partial version, as documented on {@link JdkReleases#select(JdkVersion)},
+   * or null if there is none.
+   */
+  JdkRelease select(JdkVersion ver) {
+    if (ver.minor == -1) {
+      int p = find(majorKeys, majorPos, pack(ver.major, 0, 0));
+      return p == -1 ? null : releases.get(p);
+    }
+
+    int best = -1;
+    if (ver.security == -1) {
+      // a major.minor prefix of a version with a security component
+      best = find(minorKeys, minorPos, pack(ver.major, ver.minor, 0));
+    }
+
+    int p = find(versionKeys, versionPos, pack(ver.major, ver.minor, ver.security));
+    if (p != -1 && !ver.buildNumber.isEmpty()) {
+      p = findBuild(p, ver);
+    }
+    if (p != -1 && (best == -1 || p < best)) {
+      best = p;
+    }
+    return best == -1 ? null : releases.get(best);
+  }
+
+  private int findBuild(int from, JdkVersion ver) {
+    for (int i = from; i < releases.size(); i++) {
+      JdkVersion o = releases.get(i).getVersion();
+      if (o.major != ver.major || o.minor != ver.minor || o.security != ver.security) {
+        break;
+      }
+      if (o.buildNumber.equals(ver.buildNumber)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,203 @@
+package io.takari.jdkget.model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A set of releases described by an expression, compiled once and evaluated against the index of a
+ * catalog. Every version clause selects a contiguous run of the newest first release list, so evaluating
+ * it is a couple of binary searches and the clauses are combined as bit sets.
+ * <p>
+ * An expression is a comma separated list of alternatives, each of them a space separated list of clauses
+ * that all have to match:
+ * <ul>
+ * <li><code>8u151</code>, <code>11.0.x</code>, <code>11</code>: releases with the given version prefix</li>
+ * <li><code>8u151..8u202</code>, <code>9..</code>, <code>..11.0.2</code>: releases between the prefixes,
+ * both included</li>
+ * <li><code>&gt;=9</code>, <code>&gt;9</code>, <code>&lt;12</code>, <code>&lt;=11.0</code>,
+ * <code>=8u202</code>: releases compared to all versions with the prefix</li>
+ * <li><code>latest</code>: the newest non-PSU release</li>
+ * <li><code>latest-per-major</code>: the newest non-PSU release of every major version</li>
+ * </ul>
+ * Build numbers are ignored, <code>8u202</code> and <code>8u202-b08</code> select the same releases.
+ */
+public class VersionRange {
+
+  private interface Clause {
+    BitSet eval(ReleaseIndex idx);
+  }
+
+  private final String expression;
+  private final List<List<Clause>> alternatives;
+
+  private VersionRange(String expression, List<List<Clause>> alternatives) {
+    this.expression = expression;
+    this.alternatives = alternatives;
+  }
+
+  /**
+   * @throws IllegalArgumentException if the expression is not valid
+   */
+  public static VersionRange parse(String expression) {
+    String normalized = expression.trim() //
+        .replaceAll("(>=|<=|>|<|=)\\s+", "$1") //
+        .replaceAll("\\s*\\.\\.\\s*", "..");
+
+    List<List<Clause>> alternatives = new ArrayList<>();
+    for (String alt : normalized.split(",")) {
+      List<Clause> clauses = new ArrayList<>();
+      for (String c : alt.trim().split("\\s+")) {
+        if (!c.isEmpty()) {
+          clauses.add(clause(c, expression));
+        }
+      }
+      if (clauses.isEmpty()) {
+        throw new IllegalArgumentException("Empty alternative in version range: " + expression);
+      }
+      alternatives.add(clauses);
+    }
+    return new VersionRange(expression, alternatives);
+  }
+
+  /**
+   * Selects <code>from</code> up to and including <code>to</code>, either of them may be null for no bound.
+   * Unlike in expressions the bounds are compared with build numbers, so <code>to</code> 8u151-b12 leaves
+   * out later builds of 8u151.
+   */
+  public static VersionRange between(JdkVersion from, JdkVersion to) {
+    Clause versions = interval(from == null ? 0 : lower(from), to == null ? Long.MAX_VALUE : upper(to));
+    Clause builds = idx -> {
+      BitSet bs = versions.eval(idx);
+      // releases are newest first, so only the runs of builds at either end can be out of bounds
+      int i = bs.nextSetBit(0);
+      while (i >= 0 && to != null && idx.get(i).getVersion().compareTo(to) > 0) {
+        bs.clear(i);
+        i = bs.nextSetBit(i + 1);
+      }
+      i = bs.length() - 1;
+      while (i >= 0 && from != null && idx.get(i).getVersion().compareTo(from) < 0) {
+        bs.clear(i);
+        i = bs.previousSetBit(i - 1);
+      }
+      return bs;
+    };
+    String expr = (from == null ? "" : from.shortBuild()) + ".." + (to == null ? "" : to.shortBuild());
+    return new VersionRange(expr, Collections.singletonList(Collections.singletonList(builds)));
+  }
+
+  private static Clause clause(String c, String expression) {
+    if (c.equals("latest")) {
+      return idx -> {
+        BitSet bs = new BitSet(idx.size());
+        if (idx.latestPosition() != -1) {
+          bs.set(idx.latestPosition());
+        }
+        return bs;
+      };
+    }
+    if (c.equals("latest-per-major")) {
+      return idx -> {
+        BitSet bs = new BitSet(idx.size());
+        for (int pos : idx.latestPerMajor()) {
+          bs.set(pos);
+        }
+        return bs;
+      };
+    }
+
+    int dots = c.indexOf("..");
+    if (dots != -1) {
+      String from = c.substring(0, dots);
+      String to = c.substring(dots + 2);
+      return interval(from.isEmpty() ? 0 : lower(prefix(from, expression)),
+          to.isEmpty() ? Long.MAX_VALUE : upper(prefix(to, expression)));
+    }
+    if (c.startsWith(">=")) {
+      return interval(lower(prefix(c.substring(2), expression)), Long.MAX_VALUE);
+    }
+    if (c.startsWith("<=")) {
+      return interval(0, upper(prefix(c.substring(2), expression)));
+    }
+    if (c.startsWith(">")) {
+      return interval(upper(prefix(c.substring(1), expression)) + 1, Long.MAX_VALUE);
+    }
+    if (c.startsWith("<")) {
+      return interval(0, lower(prefix(c.substring(1), expression)) - 1);
+    }
+    if (c.startsWith("=")) {
+      c = c.substring(1);
+    }
+    JdkVersion v = prefix(c, expression);
+    return interval(lower(v), upper(v));
+  }
+
+  private static JdkVersion prefix(String v, String expression) {
+    for (String wildcard : new String[] {".x", ".*", "ux", "u*"}) {
+      if (v.endsWith(wildcard)) {
+        v = v.substring(0, v.length() - wildcard.length());
+        break;
+      }
+    }
+    if (v.isEmpty() || !Character.isDigit(v.charAt(0))) {
+      throw new IllegalArgumentException("Invalid version '" + v + "' in version range: " + expression);
+    }
+    try {
+      return JdkVersion.parse(v);
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Invalid version '" + v + "' in version range: " + expression, e);
+    }
+  }
+
+  // lowest and highest packed version with the prefix, missing components match anything
+  private static long lower(JdkVersion v) {
+    return ReleaseIndex.pack(v.major, v.minor, v.security);
+  }
+
+  private static long upper(JdkVersion v) {
+    return ReleaseIndex.pack(v.major, //
+        v.minor == -1 ? ReleaseIndex.WILDCARD : v.minor, //
+        v.security == -1 ? ReleaseIndex.WILDCARD : v.security);
+  }
+
+  private static Clause interval(long lo, long hi) {
+    return idx -> {
+      BitSet bs = new BitSet(idx.size());
+      if (lo <= hi) {
+        int from = hi == Long.MAX_VALUE ? 0 : idx.countAtLeast(hi + 1);
+        int to = idx.countAtLeast(lo);
+        if (from < to) {
+          bs.set(from, to);
+        }
+      }
+      return bs;
+    };
+  }
+
+  /**
+   * Returns the matching releases, newest first.
+   */
+  public List<JdkRelease> select(JdkReleases rels) {
+    ReleaseIndex idx = rels.index();
+    BitSet all = new BitSet(idx.size());
+    for (List<Clause> clauses : alternatives) {
+      BitSet bs = clauses.get(0).eval(idx);
+      for (int i = 1; i < clauses.size() && !bs.isEmpty(); i++) {
+        bs.and(clauses.get(i).eval(idx));
+      }
+      all.or(bs);
+    }
+
+    List<JdkRelease> result = new ArrayList<>(all.cardinality());
+    for (int i = all.nextSetBit(0); i >= 0; i = all.nextSetBit(i + 1)) {
+      result.add(idx.get(i));
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return expression;
+  }
+}
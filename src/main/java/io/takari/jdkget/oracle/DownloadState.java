@@ -0,0 +1,136 @@
+package io.takari.jdkget.oracle;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Progress of a partially downloaded image, persisted next to it so that a retry or a later run can
+ * resume each segment from its last durable offset.
+ */
+class DownloadState {
+
+  static final long MIN_SEGMENT_SIZE = 4L * 1024L * 1024L;
+
+  final String url;
+  final long length;
+  final String validator;
+  final List<Segment> segments;
+
+  private DownloadState(String url, long length, String validator, List<Segment> segments) {
+    this.url = url;
+    this.length = length;
+    this.validator = validator;
+    this.segments = Collections.unmodifiableList(segments);
+  }
+
+  static DownloadState create(String url, long length, String validator, int connections) {
+    int count = (int) Math.max(1L, Math.min(connections, length / MIN_SEGMENT_SIZE));
+    long size = length / count;
+    List<Segment> segments = new ArrayList<>(count);
+    long start = 0;
+    for (int i = 0; i < count; i++) {
+      long end = i == count - 1 ? length : start + size;
+      segments.add(new Segment(start, start, end));
+      start = end;
+    }
+    return new DownloadState(url, length, validator, segments);
+  }
+
+  /**
+   * Reads the state from file, returns null if there is none or it cannot be understood.
+   */
+  static DownloadState load(File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    Properties props = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      props.load(in);
+
+      String url = props.getProperty("url");
+      long length = Long.parseLong(props.getProperty("length"));
+      String validator = props.getProperty("validator");
+      int count = Integer.parseInt(props.getProperty("segments"));
+
+      List<Segment> segments = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        String[] s = props.getProperty("segment." + i).split(",");
+        segments.add(new Segment(Long.parseLong(s[0]), Long.parseLong(s[1]), Long.parseLong(s[2])));
+      }
+      return new DownloadState(url, length, validator, segments);
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  boolean matches(String url, long length, String validator) {
+    return this.url.equals(url) && this.length == length && this.validator != null
+        && this.validator.equals(validator);
+  }
+
+  long completed() {
+    long c = 0;
+    for (Segment s : segments) {
+      c += s.pos - s.start;
+    }
+    return c;
+  }
+
+  /**
+   * Flushes the written data to disk and records the offsets it covers, so the saved state never
+   * claims bytes that did not make it to the file.
+   */
+  void checkpoint(FileChannel ch, File file) throws IOException {
+    long[] positions = new long[segments.size()];
+    for (int i = 0; i < positions.length; i++) {
+      positions[i] = segments.get(i).pos;
+    }
+    ch.force(false);
+    save(file, positions);
+  }
+
+  private void save(File file, long[] positions) throws IOException {
+    Properties props = new Properties();
+    props.setProperty("url", url);
+    props.setProperty("length", Long.toString(length));
+    props.setProperty("validator", validator);
+    props.setProperty("segments", Integer.toString(segments.size()));
+    for (int i = 0; i < positions.length; i++) {
+      Segment s = segments.get(i);
+      props.setProperty("segment." + i, s.start + "," + positions[i] + "," + s.end);
+    }
+
+    File tmp = new File(file.getPath() + ".tmp");
+    try (OutputStream out = new FileOutputStream(tmp)) {
+      props.store(out, null);
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  static class Segment {
+    final long start;
+    final long end;
+    volatile long pos;
+
+    Segment(long start, long pos, long end) {
+      this.start = start;
+      this.pos = pos;
+      this.end = end;
+    }
+
+    boolean isComplete() {
+      return pos >= end;
+    }
+  }
+}
@@ -4,22 +4,38 @@ import java.util.Map;
 
 import io.takari.jdkget.ITransport;
 import io.takari.jdkget.ITransportFactory;
+import io.takari.jdkget.Throttle;
 
 public class OracleTransportFactory implements ITransportFactory {
   private static final long serialVersionUID = 1L;
 
   @Override
   public ITransport createTransport(Map<String, String> parameters) {
+    OracleWebsiteTransport transport = new OracleWebsiteTransport();
     if (parameters != null) {
       String website = parameters.get(PARAM_BASEURL);
       String otnUsername = parameters.get(PARAM_USERNAME);
       String otnPassword = parameters.get(PARAM_PASSWORD);
 
       if (website != null || otnUsername != null || otnPassword != null) {
-        return new OracleWebsiteTransport(website, otnUsername, otnPassword);
+        transport = new OracleWebsiteTransport(website, otnUsername, otnPassword);
       }
+
+      String connections = parameters.get(PARAM_CONNECTIONS);
+      if (connections != null) {
+        transport.setConnections(Integer.parseInt(connections));
+      }
+      String maxConnections = parameters.get(PARAM_MAX_CONNECTIONS);
+      if (maxConnections != null) {
+        transport.setMaxConnections(Integer.parseInt(maxConnections));
+      }
+      String maxConnectionsPerRoute = parameters.get(PARAM_MAX_CONNECTIONS_PER_ROUTE);
+      if (maxConnectionsPerRoute != null) {
+        transport.setMaxConnectionsPerRoute(Integer.parseInt(maxConnectionsPerRoute));
+      }
+      transport.setThrottle(Throttle.fromParameters(parameters));
     }
-    return new OracleWebsiteTransport();
+    return transport;
   }
 
 }
@@ -1,18 +1,26 @@
 package io.takari.jdkget.oracle;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.Consts;
@@ -31,15 +39,18 @@ import org.apache.http.cookie.ClientCookie;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.impl.cookie.BasicClientCookie;
 import org.apache.http.message.BasicNameValuePair;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hasher;
-import com.google.common.hash.Hashing;
+import org.apache.http.util.EntityUtils;
 
+import io.takari.jdkget.Digests;
+import io.takari.jdkget.Digests.Digester;
 import io.takari.jdkget.IOutput;
 import io.takari.jdkget.ITransport;
 import io.takari.jdkget.JdkGetter;
+import io.takari.jdkget.RetryPolicy;
+import io.takari.jdkget.Throttle;
 import io.takari.jdkget.Util;
 import io.takari.jdkget.model.JCE;
 import io.takari.jdkget.model.JdkBinary;
@@ -50,10 +61,24 @@ public class OracleWebsiteTransport implements ITransport {
 
   public static final String JDK_URL_FORMAT = "/java/jdk/%s/jdk-%s-%s.%s";
 
+  public static final int DEFAULT_MAX_CONNECTIONS = 50;
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 10;
+
+  private static final long IDLE_CONNECTION_TIMEOUT = 30L * 1000L;
+
+  static final String PART_SUFFIX = ".part";
+  static final String STATE_SUFFIX = ".part.state";
+
   private final String website;
   private final String otnUsername;
   private final String otnPassword;
   private volatile BasicCookieStore cookieStore;
+  private volatile CloseableHttpClient client;
+  private final ResolvedUrls resolvedUrls = new ResolvedUrls();
+  private int connections = 1;
+  private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+  private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+  private Throttle throttle = Throttle.unlimited();
 
   public OracleWebsiteTransport() {
     this(ORACLE_WEBSITE);
@@ -69,9 +94,78 @@ public class OracleWebsiteTransport implements ITransport {
     this.otnPassword = otnPassword;
   }
 
+  public int getConnections() {
+    return connections;
+  }
+
+  /**
+   * Number of parallel connections used to download a single binary; values above 1 enable HTTP Range
+   * segmented downloads when the server supports them.
+   */
+  public void setConnections(int connections) {
+    this.connections = Math.max(1, connections);
+  }
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  /**
+   * Total number of pooled connections shared by all downloads of this transport. Takes effect when the
+   * client is (re)created, i.e. before the first download or after {@link #close()}.
+   */
+  public void setMaxConnections(int maxConnections) {
+    this.maxConnections = Math.max(1, maxConnections);
+  }
+
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  /**
+   * Number of pooled connections per host. Should cover the number of concurrent downloads times
+   * {@link #getConnections()}, otherwise requests wait for a free connection.
+   */
+  public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    this.maxConnectionsPerRoute = Math.max(1, maxConnectionsPerRoute);
+  }
+
+  @Override
+  public Throttle getThrottle() {
+    return throttle;
+  }
+
+  /**
+   * Bandwidth and per-host transfer limits applied to all downloads of this transport.
+   */
+  public void setThrottle(Throttle throttle) {
+    this.throttle = throttle == null ? Throttle.unlimited() : throttle;
+  }
+
   @Override
   public void downloadJdk(JdkGetter context, JdkBinary bin, File jdkImage) throws IOException, InterruptedException {
-    doDownload(context, website + "/" + bin.getPath(), jdkImage);
+    downloadJdk(context, bin, jdkImage, null);
+  }
+
+  @Override
+  public void downloadJdk(JdkGetter context, JdkBinary bin, File jdkImage, OutputStream tee)
+      throws IOException, InterruptedException {
+    Digester digester = Digests.digester(bin);
+    doDownload(context, bin.getPath(), jdkImage, digester, tee != null ? new TeeGuard(tee) : null);
+    Digests.record(jdkImage, digester.digests());
+  }
+
+  @Override
+  public String getHost(JdkBinary binary) {
+    ResolvedUrls.Resolved resolved = resolvedUrls.get(binary.getPath());
+    if (resolved != null) {
+      return resolved.uri.getHost();
+    }
+    try {
+      return new URI(website + "/" + binary.getPath()).getHost();
+    } catch (URISyntaxException e) {
+      return null;
+    }
   }
 
   @Override
@@ -80,51 +174,86 @@ public class OracleWebsiteTransport implements ITransport {
       throw new IllegalStateException("No JCE provided");
     }
 
-    doDownload(context, website + "/" + jce.getPath(), jceImage);
+    doDownload(context, jce.getPath(), jceImage, null, null);
   }
 
-  private void doDownload(JdkGetter context, final String url, File target) throws IOException, InterruptedException {
+  private void doDownload(JdkGetter context, String path, File target, Digester digester, OutputStream tee)
+      throws IOException, InterruptedException {
+    final String url = website + "/" + path;
     IOutput output = context.getLog();
     boolean echo = !context.isSilent();
     if (echo) {
       output.info("Downloading " + cleanUrl(url));
     }
 
-    BasicCookieStore cookieStore = initCookieStore();
-
     RequestConfig requestConfig = RequestConfig.custom()
         .setSocketTimeout(context.getSocketTimeout())
         .setConnectTimeout(context.getConnectTimeout())
         .setConnectionRequestTimeout(context.getConnectionRequestTimeout())
         .build();
 
-    CloseableHttpClient cl = HttpClientBuilder.create()
-        .setDefaultRequestConfig(requestConfig)
-        .setDefaultCookieStore(cookieStore)
-        .disableRedirectHandling()
-        // .setUserAgent("curl/7.47.0")
-        // User Agent String of Safari
-        .setUserAgent("Mozilla/5.0 (iPad; CPU OS 7_0 like Mac OS X) "
-            + "AppleWebKit/537.51.1 (KHTML, like Gecko) "
-            + "CriOS/30.0.1599.12 Mobile/11A465 Safari/8536.25 "
-            + "(3B92C18B-D9DE-4CB7-A02A-22FD2AF17C8F)")
-        .build();
+    CloseableHttpClient cl = initClient();
 
     boolean hasOtnCredentials = StringUtils.isNotBlank(otnUsername) && StringUtils.isNotBlank(otnPassword);
 
     HttpRequestBase req = new HttpGet(url);
 
+    // go straight to the final url if it was resolved recently
+    ResolvedUrls.Resolved resolved = resolvedUrls.get(path);
+    if (resolved != null) {
+      BasicCookieStore cookieStore = initCookieStore();
+      resolved.cookies.forEach(cookieStore::addCookie);
+      req = new HttpGet(resolved.uri);
+      if (echo) {
+        output.info("Using resolved " + cleanUrl(resolved.uri.toString()));
+      }
+    }
+
     // Oracle does some redirects so we have to follow a couple before we win the JDK prize
+    RetryPolicy policy = context.getRetryPolicy();
+    int errors = 0;
     int retries = 20;
     for (int retry = 0; retry < retries; retry++) {
 
-      CloseableHttpResponse res = cl.execute(req);
+      String host = req.getURI().getHost();
+      // the host's transfer slot is taken before connecting, so that it bounds the open connections
+      Closeable permit = throttle.connection(host);
+      CloseableHttpResponse res;
+      try {
+        policy.checkHost(host);
+        req.setConfig(requestConfig);
+        try {
+          res = cl.execute(req);
+        } catch (IOException e) {
+          policy.hostFailed(host);
+          throw e;
+        }
+      } catch (IOException | RuntimeException e) {
+        permit.close();
+        throw e;
+      }
+      boolean downloading = false;
+      boolean backoff = false;
       try {
         int code = res.getStatusLine().getStatusCode();
         String msg = res.getStatusLine().getReasonPhrase();
-
         boolean shouldTryLogin = hasOtnCredentials && req.getURI().getHost().equals("login.oracle.com");
 
+        // redirects and client errors are proper answers too, a 200 only counts once its body is downloaded
+        if (code >= 500) {
+          policy.hostFailed(host);
+        } else if (code != 200 || shouldTryLogin) {
+          policy.hostSucceeded(host);
+        }
+
+        if (resolved != null && code != 200) {
+          // resolved url went stale, walk the chain from the start
+          resolvedUrls.invalidate(path);
+          resolved = null;
+          req = new HttpGet(url);
+          continue;
+        }
+
         if (code == 401 && shouldTryLogin) {
           req = createLoginBasic(URI.create(res.getFirstHeader("Location").getValue()), otnUsername, otnPassword);
           if (echo) {
@@ -137,7 +266,24 @@ public class OracleWebsiteTransport implements ITransport {
             output.info("Authorizing on " + cleanUrl(req.getURI().toString()));
           }
         } else if (code == 200) {
-          downloadResponse(context, res, target);
+          if (resolved == null && !req.getURI().toString().equals(url)) {
+            resolvedUrls.put(path, req.getURI(), initCookieStore().getCookies());
+          }
+          downloading = true;
+          try {
+            downloadResponse(context, cl, requestConfig, url, req.getURI(), res, permit, target, digester, tee);
+          } catch (SegmentedDownload.ResourceChangedException e) {
+            // the host answered properly, the file changed under the download
+            policy.hostSucceeded(host);
+            throw e;
+          } catch (TeeFailedException e) {
+            // like a streaming extractor giving up, which says nothing about the host
+            throw e;
+          } catch (IOException e) {
+            policy.hostFailed(host);
+            throw e;
+          }
+          policy.hostSucceeded(host);
           return;
         } else if (code == 301 || code == 302) {
           String newUrl = res.getFirstHeader("Location").getValue();
@@ -156,17 +302,75 @@ public class OracleWebsiteTransport implements ITransport {
             throw new IOException("Could not download jdk");
           }
         } else {
+          if (!policy.acquireRetry()) {
+            output.error("Server responded with " + code + ": " + msg);
+            throw new IOException("Could not download jdk, retry budget exhausted");
+          }
           output.error("Server responded with " + code + ": " + msg + ", retrying");
           req = new HttpGet(req.getURI());
+          backoff = true;
         }
       } finally {
+        // lets another caller probe the host if this one ended without an outcome, like when interrupted
+        policy.hostAbandoned(host);
+        if (!downloading) {
+          // drain redirect and error pages so the connection goes back to the pool
+          EntityUtils.consumeQuietly(res.getEntity());
+        }
         res.close();
+        permit.close();
+      }
+      if (backoff) {
+        policy.backoff(errors++);
       }
     }
 
     throw new IOException("Could not download jdk after " + retries + " attempts");
   }
 
+  private CloseableHttpClient initClient() {
+    if (client == null) {
+      synchronized (this) {
+        if (client == null) {
+          PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
+          cm.setMaxTotal(maxConnections);
+          cm.setDefaultMaxPerRoute(Math.max(maxConnectionsPerRoute, connections));
+
+          client = HttpClientBuilder.create()
+              .setConnectionManager(cm)
+              .setDefaultCookieStore(initCookieStore())
+              .disableRedirectHandling()
+              .evictExpiredConnections()
+              .evictIdleConnections(IDLE_CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS)
+              // .setUserAgent("curl/7.47.0")
+              // User Agent String of Safari
+              .setUserAgent("Mozilla/5.0 (iPad; CPU OS 7_0 like Mac OS X) "
+                  + "AppleWebKit/537.51.1 (KHTML, like Gecko) "
+                  + "CriOS/30.0.1599.12 Mobile/11A465 Safari/8536.25 "
+                  + "(3B92C18B-D9DE-4CB7-A02A-22FD2AF17C8F)")
+              .build();
+        }
+      }
+    }
+    return client;
+  }
+
+  /**
+   * Closes the pooled client and its connections. The transport stays usable, a new client is created on
+   * the next download.
+   */
+  @Override
+  public void close() throws IOException {
+    CloseableHttpClient cl;
+    synchronized (this) {
+      cl = client;
+      client = null;
+    }
+    if (cl != null) {
+      cl.close();
+    }
+  }
+
   private BasicCookieStore initCookieStore() {
     if (cookieStore == null) {
       synchronized (this) {
@@ -192,7 +396,8 @@ public class OracleWebsiteTransport implements ITransport {
     return q != -1 ? url.substring(0, q) : url;
   }
 
-  private void downloadResponse(JdkGetter context, HttpResponse res, File target)
+  private void downloadResponse(JdkGetter context, CloseableHttpClient cl, RequestConfig requestConfig, String url,
+      URI uri, CloseableHttpResponse res, Closeable permit, File target, Digester digester, OutputStream tee)
       throws IOException, InterruptedException, FileNotFoundException {
     Header contentLength = res.getFirstHeader("Content-Length");
     long totalHint = -1;
@@ -203,9 +408,125 @@ public class OracleWebsiteTransport implements ITransport {
       }
     }
 
-    try (InputStream is = res.getEntity().getContent(); OutputStream os = new FileOutputStream(target)) {
-      IOutput output = context.isSilent() ? IOutput.NULL_OUTPUT : context.getLog();
-      Util.copyWithProgress(is, os, totalHint, output);
+    IOutput output = context.isSilent() ? IOutput.NULL_OUTPUT : context.getLog();
+    File part = new File(target.getPath() + PART_SUFFIX);
+    File stateFile = new File(target.getPath() + STATE_SUFFIX);
+
+    Header acceptRanges = res.getFirstHeader(HttpHeaders.ACCEPT_RANGES);
+    boolean ranges = totalHint > 0 && acceptRanges != null && "bytes".equalsIgnoreCase(acceptRanges.getValue());
+    String validator = validator(res);
+
+    DownloadState state = null;
+    if (ranges && validator != null && part.exists()) {
+      state = DownloadState.load(stateFile);
+      if (state != null && !state.matches(url, totalHint, validator)) {
+        state = null;
+      }
+      if (state != null && !context.isSilent()) {
+        output.info("Resuming download at " + state.completed() + " of " + totalHint + " bytes");
+      }
+    }
+    if (state == null && ranges) {
+      state = DownloadState.create(url, totalHint, validator, connections);
+    }
+
+    if (state == null) {
+      stateFile.delete();
+      OutputStream out = new FileOutputStream(part);
+      if (tee != null) {
+        out = new TeeOutputStream(out, new CloseShieldOutputStream(tee));
+      }
+      if (digester != null) {
+        out = digester.wrap(out);
+      }
+      try (InputStream is = throttle.wrap(res.getEntity().getContent()); OutputStream os = out) {
+        Util.copyWithProgress(is, os, totalHint, output);
+      }
+    } else {
+      // a segment starting at 0 is read from this response, which is then aborted by closing the response
+      // rather than its content stream, as the latter would drain the remaining body, and its slot released
+      Closeable bodyDone = () -> {
+        try {
+          res.close();
+        } finally {
+          permit.close();
+        }
+      };
+      try {
+        new SegmentedDownload(cl, requestConfig, uri, state, validator != null ? stateFile : null, connections,
+            throttle, digester, tee)
+            .download(res.getEntity().getContent(), bodyDone, part, output);
+      } catch (SegmentedDownload.ResourceChangedException e) {
+        stateFile.delete();
+        part.delete();
+        throw e;
+      }
+    }
+
+    Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    stateFile.delete();
+  }
+
+  /**
+   * Strong ETag or Last-Modified of the response, usable in If-Range to safely resume a download.
+   */
+  private static String validator(HttpResponse res) {
+    Header etag = res.getFirstHeader(HttpHeaders.ETAG);
+    if (etag != null && !etag.getValue().startsWith("W/")) {
+      return etag.getValue();
+    }
+    Header lastModified = res.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+    return lastModified != null ? lastModified.getValue() : null;
+  }
+
+  /**
+   * Marks failures writing to the tee stream, so they are not taken for failures of the host.
+   */
+  private static class TeeGuard extends FilterOutputStream {
+
+    TeeGuard(OutputStream tee) {
+      super(tee);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      try {
+        out.write(b);
+      } catch (InterruptedIOException e) {
+        throw e;
+      } catch (IOException e) {
+        throw new TeeFailedException(e);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      try {
+        out.write(b, off, len);
+      } catch (InterruptedIOException e) {
+        throw e;
+      } catch (IOException e) {
+        throw new TeeFailedException(e);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      try {
+        out.flush();
+      } catch (InterruptedIOException e) {
+        throw e;
+      } catch (IOException e) {
+        throw new TeeFailedException(e);
+      }
+    }
+  }
+
+  static class TeeFailedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    TeeFailedException(IOException cause) {
+      super("Writing to the tee stream failed: " + cause.getMessage(), cause);
     }
   }
 
@@ -292,52 +613,12 @@ public class OracleWebsiteTransport implements ITransport {
 
   @Override
   public boolean validate(JdkGetter context, JdkBinary bin, File jdkImage) throws IOException, InterruptedException {
-
-    IOutput output = context.getLog();
-
-    int checks = 0;
-    int failed = 0;
-
-    if (bin.getSha256() != null) {
-      checks++;
-      String fileHash = hash(jdkImage, Hashing.sha256());
-      if (!bin.getSha256().equals(fileHash)) {
-        failed++;
-        output.error("File sha256 `" + fileHash + "` differs from `" + bin.getSha256() + "`");
-      }
-    }
-    if (bin.getMd5() != null) {
-      checks++;
-      String fileHash = hash(jdkImage, Hashing.md5());
-      if (!bin.getMd5().equals(fileHash)) {
-        failed++;
-        output.error("File md5 `" + fileHash + "` differs from `" + bin.getMd5() + "`");
-      }
-    }
-    if (bin.getSize() != -1) {
-      checks++;
-      if (bin.getSize() != jdkImage.length()) {
-        failed++;
-        output.error("File size `" + jdkImage.length() + "` differs from `" + bin.getSize() + "`");
-      }
-    }
-
-    if (checks != 0 && failed > 0) {
-      return false;
-    }
-    return true;
+    return Digests.get(jdkImage, bin).validate(bin, context.getLog());
   }
 
-  private static String hash(File f, HashFunction hf) throws IOException {
-    Hasher h = hf.newHasher();
-    try (InputStream in = new FileInputStream(f)) {
-      byte[] buf = new byte[8192];
-      int l;
-      while ((l = in.read(buf)) != -1) {
-        h.putBytes(buf, 0, l);
-      }
-    }
-    return h.hash().toString();
+  @Override
+  public boolean validatesDigests() {
+    return true;
   }
 
 }
@@ -0,0 +1,112 @@
+package io.takari.jdkget.oracle;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.http.cookie.Cookie;
+
+/**
+ * Short-lived cache of download urls resolved through the redirect and login chain, together with the
+ * cookies that were in place when they were resolved. Entries expire with the signed url they point to,
+ * or after {@link #DEFAULT_TTL} if the url does not tell.
+ */
+class ResolvedUrls {
+
+  static final long DEFAULT_TTL = 5L * 60L * 1000L;
+  static final long MAX_TTL = 60L * 60L * 1000L;
+  static final long EXPIRY_MARGIN = 30L * 1000L;
+
+  private final Map<String, Resolved> entries = new ConcurrentHashMap<>();
+
+  Resolved get(String key) {
+    Resolved r = entries.get(key);
+    if (r != null && r.expires <= System.currentTimeMillis()) {
+      entries.remove(key, r);
+      return null;
+    }
+    return r;
+  }
+
+  void put(String key, URI uri, List<Cookie> cookies) {
+    long now = System.currentTimeMillis();
+    long expires = expiry(uri, now) - EXPIRY_MARGIN;
+    if (expires > now) {
+      entries.put(key, new Resolved(uri, expires, cookies));
+    }
+  }
+
+  void invalidate(String key) {
+    entries.remove(key);
+  }
+
+  /**
+   * Returns the time the signed url stops being valid, based on the expiry parameters commonly used by
+   * Oracle and CDNs: <code>AuthParam=&lt;epochSeconds&gt;_&lt;signature&gt;</code>,
+   * <code>Expires=&lt;epochSeconds&gt;</code> and <code>X-Amz-Date</code> with <code>X-Amz-Expires</code>.
+   */
+  static long expiry(URI uri, long now) {
+    Map<String, String> params = query(uri);
+    long expires = -1;
+    try {
+      String authParam = params.get("AuthParam");
+      if (authParam != null && authParam.indexOf('_') > 0) {
+        expires = Long.parseLong(authParam.substring(0, authParam.indexOf('_'))) * 1000L;
+      } else if (params.containsKey("Expires")) {
+        expires = Long.parseLong(params.get("Expires")) * 1000L;
+      } else if (params.containsKey("X-Amz-Date") && params.containsKey("X-Amz-Expires")) {
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'");
+        fmt.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Date signed = fmt.parse(params.get("X-Amz-Date"));
+        expires = signed.getTime() + Long.parseLong(params.get("X-Amz-Expires")) * 1000L;
+      }
+    } catch (NumberFormatException | ParseException e) {
+      expires = -1;
+    }
+    if (expires == -1) {
+      return now + DEFAULT_TTL;
+    }
+    return Math.min(expires, now + MAX_TTL);
+  }
+
+  private static Map<String, String> query(URI uri) {
+    String q = uri.getRawQuery();
+    if (q == null) {
+      return Collections.emptyMap();
+    }
+    Map<String, String> params = new HashMap<>();
+    for (String p : q.split("&")) {
+      int eq = p.indexOf('=');
+      if (eq > 0) {
+        try {
+          params.put(URLDecoder.decode(p.substring(0, eq), "UTF-8"), URLDecoder.decode(p.substring(eq + 1), "UTF-8"));
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+          // ignore malformed parameter
+        }
+      }
+    }
+    return params;
+  }
+
+  static class Resolved {
+    final URI uri;
+    final long expires;
+    final List<Cookie> cookies;
+
+    Resolved(URI uri, long expires, List<Cookie> cookies) {
+      this.uri = uri;
+      this.expires = expires;
+      this.cookies = Collections.unmodifiableList(new ArrayList<>(cookies));
+    }
+  }
+}
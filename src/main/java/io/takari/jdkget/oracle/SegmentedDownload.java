@@ -0,0 +1,281 @@
+package io.takari.jdkget.oracle;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import com.google.common.base.Throwables;
+
+import io.takari.jdkget.Digests.Digester;
+import io.takari.jdkget.IOutput;
+import io.takari.jdkget.Throttle;
+import io.takari.jdkget.Util;
+import io.takari.jdkget.oracle.DownloadState.Segment;
+
+/**
+ * Downloads a single resource over several parallel connections, each fetching its own HTTP Range
+ * segment into a preallocated file. Progress is periodically checkpointed into a state file, if one is
+ * given, so that an interrupted download can be resumed.
+ */
+class SegmentedDownload {
+
+  private static final long PROGRESS_FREQ = 3000L;
+  private static final long FOLLOW_POLL = 20L;
+  private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d{1,18})-(\\d{1,18})/(\\d{1,18}|\\*)");
+
+  private final CloseableHttpClient client;
+  private final RequestConfig requestConfig;
+  private final URI uri;
+  private final DownloadState state;
+  private final File stateFile;
+  private final int connections;
+  private final Throttle throttle;
+  private final Digester digester;
+  private final OutputStream tee;
+  private final Set<HttpGet> active = ConcurrentHashMap.newKeySet();
+
+  SegmentedDownload(CloseableHttpClient client, RequestConfig requestConfig, URI uri, DownloadState state,
+      File stateFile, int connections, Throttle throttle, Digester digester, OutputStream tee) {
+    this.client = client;
+    this.requestConfig = requestConfig;
+    this.uri = uri;
+    this.state = state;
+    this.stateFile = stateFile;
+    this.connections = connections;
+    this.throttle = throttle;
+    this.digester = digester;
+    this.tee = tee;
+  }
+
+  /**
+   * Downloads all incomplete segments into target. The full response body, if given, is used for a
+   * segment starting at the beginning of the file that has no data yet; every other segment is
+   * requested with Range and If-Range headers. bodyDone is closed as soon as the body is no longer needed,
+   * to give up its connection and transfer slot before the download completes.
+   * <p>
+   * If a digester or a tee stream is given, they are fed the file contents in order as soon as the
+   * segments make them available, so the digests are ready when the download completes.
+   */
+  void download(InputStream body, Closeable bodyDone, File target, IOutput output)
+      throws IOException, InterruptedException {
+    AtomicLong copied = new AtomicLong(state.completed());
+
+    try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+      if (raf.length() != state.length) {
+        raf.setLength(state.length);
+      }
+      FileChannel ch = raf.getChannel();
+      if (stateFile != null) {
+        state.checkpoint(ch, stateFile);
+      }
+
+      boolean follow = digester != null || tee != null;
+      ExecutorService ex = Executors.newFixedThreadPool(connections + (follow ? 1 : 0));
+      try {
+        List<Future<?>> futures = new ArrayList<>();
+        for (Segment seg : state.segments) {
+          if (seg.isComplete()) {
+            continue;
+          }
+          if (body != null && seg.start == 0 && seg.pos == 0) {
+            InputStream in = body;
+            futures.add(ex.submit(() -> {
+              try {
+                copy(seg, throttle.wrap(in), ch, copied);
+              } finally {
+                bodyDone.close();
+              }
+              return null;
+            }));
+            body = null;
+          } else {
+            futures.add(ex.submit(() -> {
+              fetch(seg, ch, copied);
+              return null;
+            }));
+          }
+        }
+        if (body != null) {
+          bodyDone.close();
+        }
+        if (follow) {
+          futures.add(ex.submit(() -> {
+            follow(ch);
+            return null;
+          }));
+        }
+        await(futures, ch, copied, output);
+      } finally {
+        // checkpoint before interrupting the workers, an interrupt during a write closes the channel
+        try {
+          if (stateFile != null && ch.isOpen()) {
+            state.checkpoint(ch, stateFile);
+          }
+        } finally {
+          active.forEach(HttpGet::abort);
+          ex.shutdownNow();
+        }
+      }
+    }
+  }
+
+  private void fetch(Segment seg, FileChannel ch, AtomicLong copied) throws IOException, InterruptedException {
+    HttpGet req = new HttpGet(uri);
+    req.setConfig(requestConfig);
+    req.setHeader(HttpHeaders.RANGE, "bytes=" + seg.pos + "-" + (seg.end - 1));
+    if (state.validator != null) {
+      req.setHeader(HttpHeaders.IF_RANGE, state.validator);
+    }
+    active.add(req);
+    try {
+      Closeable permit = throttle.connection(uri.getHost());
+      try (CloseableHttpResponse res = client.execute(req)) {
+        int code = res.getStatusLine().getStatusCode();
+        if (code == 200) {
+          throw new ResourceChangedException("Resource " + uri.getPath() + " changed since download started");
+        }
+        if (code != 206) {
+          throw new IOException("Server responded with " + code + " to a range request for " + uri.getPath());
+        }
+        checkContentRange(res.getFirstHeader(HttpHeaders.CONTENT_RANGE), seg);
+        try (InputStream in = throttle.wrap(res.getEntity().getContent())) {
+          copy(seg, in, ch, copied);
+        }
+      } finally {
+        permit.close();
+      }
+    } finally {
+      active.remove(req);
+    }
+  }
+
+  /**
+   * Makes sure a partial response holds exactly the requested bytes of a resource of the expected length,
+   * anything else would be written to the wrong place of the file.
+   */
+  private void checkContentRange(Header contentRange, Segment seg) throws IOException {
+    Matcher m = contentRange == null ? null : CONTENT_RANGE.matcher(contentRange.getValue().trim());
+    if (m == null || !m.matches() || Long.parseLong(m.group(1)) != seg.pos
+        || Long.parseLong(m.group(2)) != seg.end - 1) {
+      String value = contentRange == null ? null : contentRange.getValue();
+      throw new IOException("Server responded with Content-Range " + value + " to a request for bytes " + seg.pos
+          + "-" + (seg.end - 1) + " of " + uri.getPath());
+    }
+    if (!m.group(3).equals("*") && Long.parseLong(m.group(3)) != state.length) {
+      throw new ResourceChangedException("Resource " + uri.getPath() + " changed length since download started");
+    }
+  }
+
+  private static void copy(Segment seg, InputStream in, FileChannel ch, AtomicLong copied)
+      throws IOException, InterruptedException {
+    byte[] buf = new byte[64 * 1024];
+    ByteBuffer bb = ByteBuffer.wrap(buf);
+    while (seg.pos < seg.end) {
+      int l = in.read(buf, 0, (int) Math.min(buf.length, seg.end - seg.pos));
+      if (l == -1) {
+        throw new IOException("Premature end of stream at " + seg.pos + ", expected " + seg.end);
+      }
+      Util.checkInterrupt();
+      bb.clear().limit(l);
+      long pos = seg.pos;
+      while (bb.hasRemaining()) {
+        pos += ch.write(bb, pos);
+      }
+      seg.pos = pos;
+      copied.addAndGet(l);
+    }
+  }
+
+  /**
+   * Reads the file back in order, trailing the segment writers, and feeds it to the digester and the tee.
+   * Freshly written data is still in the page cache, so this does not cost an extra pass over the disk.
+   */
+  private void follow(FileChannel ch) throws IOException, InterruptedException {
+    ByteBuffer bb = ByteBuffer.allocate(256 * 1024);
+    long followed = 0;
+    for (Segment seg : state.segments) {
+      while (followed < seg.end) {
+        long available = seg.pos;
+        if (available <= followed) {
+          Thread.sleep(FOLLOW_POLL);
+          continue;
+        }
+        bb.clear();
+        bb.limit((int) Math.min(bb.capacity(), available - followed));
+        int l = ch.read(bb, followed);
+        if (l == -1) {
+          throw new IOException("Unexpected end of file at " + followed);
+        }
+        if (digester != null) {
+          digester.update(bb.array(), 0, l);
+        }
+        if (tee != null) {
+          tee.write(bb.array(), 0, l);
+        }
+        followed += l;
+      }
+    }
+  }
+
+  private void await(List<Future<?>> futures, FileChannel ch, AtomicLong copied, IOutput output)
+      throws IOException, InterruptedException {
+    long start = System.currentTimeMillis();
+    long resumedAt = copied.get();
+    for (Future<?> f : futures) {
+      while (true) {
+        try {
+          f.get(PROGRESS_FREQ, TimeUnit.MILLISECONDS);
+          break;
+        } catch (TimeoutException e) {
+          if (stateFile != null) {
+            state.checkpoint(ch, stateFile);
+          }
+          output.printProgress(System.currentTimeMillis() - start, copied.get() - resumedAt,
+              state.length - resumedAt);
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          Throwables.propagateIfInstanceOf(cause, InterruptedException.class);
+          Throwables.propagateIfPossible(cause, IOException.class);
+          throw new IOException(cause);
+        }
+      }
+    }
+  }
+
+  /**
+   * Thrown when the validator of the resource no longer matches the one the download was started with.
+   */
+  static class ResourceChangedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    ResourceChangedException(String message) {
+      super(message);
+    }
+  }
+}
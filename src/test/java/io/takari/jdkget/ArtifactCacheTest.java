@@ -0,0 +1,115 @@
+package io.takari.jdkget;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.hash.Hashing;
+
+import io.takari.jdkget.model.JdkBinary;
+import io.takari.jdkget.model.JdkReleases;
+
+public class ArtifactCacheTest {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder(new File("target/")); // trash target and not system
+
+  @Test
+  public void testPutAndFetch() throws Exception {
+    ArtifactCache cache = new ArtifactCache(temporaryFolder.newFolder("cache"));
+    byte[] data = "jdk image".getBytes("UTF-8");
+    JdkBinary bin = binary(data);
+
+    File target = new File(temporaryFolder.newFolder("out"), "jdk.tar.gz");
+    assertFalse(cache.fetch(bin, target, IOutput.NULL_OUTPUT));
+
+    cache.put(bin, image(data), IOutput.NULL_OUTPUT);
+    assertTrue(cache.fetch(bin, target, IOutput.NULL_OUTPUT));
+    assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+  }
+
+  @Test
+  public void testRejectsMismatchingContent() throws Exception {
+    ArtifactCache cache = new ArtifactCache(temporaryFolder.newFolder("cache"));
+    JdkBinary bin = binary("jdk image".getBytes("UTF-8"));
+
+    cache.put(bin, image("something else".getBytes("UTF-8")), IOutput.NULL_OUTPUT);
+    assertFalse(cache.entry(bin).exists());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() throws Exception {
+    ArtifactCache cache = new ArtifactCache(temporaryFolder.newFolder("cache"), 5);
+    byte[] d1 = "first jdk".getBytes("UTF-8");
+    byte[] d2 = "second jdk".getBytes("UTF-8");
+    JdkBinary b1 = binary(d1);
+    JdkBinary b2 = binary(d2);
+
+    File i1 = image(d1);
+    cache.put(b1, i1, IOutput.NULL_OUTPUT);
+    i1.delete();
+    ArtifactCache.usedFile(cache.entry(b1)).setLastModified(System.currentTimeMillis() - 60000L);
+    cache.put(b2, image(d2), IOutput.NULL_OUTPUT);
+
+    assertFalse(cache.entry(b1).exists());
+    assertFalse(ArtifactCache.usedFile(cache.entry(b1)).exists());
+    assertTrue(cache.entry(b2).exists());
+  }
+
+  @Test
+  public void testKeepsEntriesLinkedElsewhere() throws Exception {
+    ArtifactCache cache = new ArtifactCache(temporaryFolder.newFolder("cache"), 5);
+    byte[] d1 = "first jdk".getBytes("UTF-8");
+    byte[] d2 = "second jdk".getBytes("UTF-8");
+    JdkBinary b1 = binary(d1);
+    JdkBinary b2 = binary(d2);
+
+    File i1 = image(d1);
+    cache.put(b1, i1, IOutput.NULL_OUTPUT);
+    cache.put(b2, image(d2), IOutput.NULL_OUTPUT);
+
+    if (!Files.isSameFile(i1.toPath(), cache.entry(b1).toPath())) {
+      return; // no hard links on this file system
+    }
+    // the entry shares its blocks with the image, evicting it would free nothing
+    assertTrue(cache.entry(b1).exists());
+    assertTrue(cache.entry(b2).exists());
+  }
+
+  @Test
+  public void testFetchLeavesImagesUntouched() throws Exception {
+    ArtifactCache cache = new ArtifactCache(temporaryFolder.newFolder("cache"));
+    byte[] data = "jdk image".getBytes("UTF-8");
+    JdkBinary bin = binary(data);
+
+    File image = image(data);
+    long mtime = (System.currentTimeMillis() - 60000L) / 1000L * 1000L;
+    image.setLastModified(mtime);
+    cache.put(bin, image, IOutput.NULL_OUTPUT);
+    assertTrue(cache.fetch(bin, new File(temporaryFolder.newFolder("out"), "jdk.tar.gz"), IOutput.NULL_OUTPUT));
+
+    assertEquals(mtime, image.lastModified());
+    assertEquals(mtime, cache.entry(bin).lastModified());
+  }
+
+  private File image(byte[] data) throws Exception {
+    File f = temporaryFolder.newFile();
+    Files.write(f.toPath(), data);
+    return f;
+  }
+
+  private static JdkBinary binary(byte[] data) {
+    String sha256 = Hashing.sha256().hashBytes(data).toString();
+    return JdkReleases.newBuilder() //
+        .addBinary("1.8.0_1-b01", Arch.NIX_64, "jdk.tar.gz", null, sha256, data.length) //
+        .build().getReleases().get(0).getBinaries(null, Arch.NIX_64).get(0);
+  }
+}
@@ -0,0 +1,74 @@
+package io.takari.jdkget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.hash.Hashing;
+
+import io.takari.jdkget.model.JdkBinary;
+import io.takari.jdkget.model.JdkReleases;
+
+public class BulkVerifierTest {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder(new File("target/")); // trash target and not system
+
+  @Test
+  public void testDigestsConcurrently() throws Exception {
+    Random r = new Random(1);
+    List<byte[]> data = new ArrayList<>();
+    List<Future<Digests>> digests = new ArrayList<>();
+    try (BulkVerifier verifier = new BulkVerifier(3)) {
+      for (int i = 0; i < 6; i++) {
+        // spans several read buffers
+        byte[] d = new byte[i * 700 * 1024 + 13];
+        r.nextBytes(d);
+        File f = temporaryFolder.newFile();
+        Files.write(f.toPath(), d);
+        data.add(d);
+        digests.add(verifier.digests(f, binary(d)));
+      }
+      for (int i = 0; i < data.size(); i++) {
+        byte[] d = data.get(i);
+        Digests dg = digests.get(i).get();
+        assertEquals(d.length, dg.getSize());
+        assertEquals(Hashing.md5().hashBytes(d).toString(), dg.getMd5());
+        assertTrue(dg.validate(binary(d), IOutput.NULL_OUTPUT));
+        assertFalse(dg.validate(binary(new byte[] {1}), IOutput.NULL_OUTPUT));
+      }
+    }
+  }
+
+  @Test
+  public void testSharedPerStorage() throws Exception {
+    File a = temporaryFolder.newFolder("a");
+    File b = temporaryFolder.newFolder("b");
+    BulkVerifier shared = BulkVerifier.shared(a);
+    assertSame(shared, BulkVerifier.shared(b));
+
+    byte[] d = "jdk image".getBytes("UTF-8");
+    File f = new File(a, "jdk.tar.gz");
+    Files.write(f.toPath(), d);
+    assertTrue(shared.await(f, binary(d)).validate(binary(d), IOutput.NULL_OUTPUT));
+  }
+
+  private static JdkBinary binary(byte[] data) {
+    return JdkReleases.newBuilder() //
+        .addBinary("1.8.0_1-b01", Arch.NIX_64, "jdk.tar.gz", Hashing.md5().hashBytes(data).toString(),
+            Hashing.sha256().hashBytes(data).toString(), data.length) //
+        .build().getReleases().get(0).getBinaries(null, Arch.NIX_64).get(0);
+  }
+}
@@ -0,0 +1,47 @@
+package io.takari.jdkget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ConcurrencyControllerTest {
+
+  // a link that each download gets 10 units of until it is full at 5 of them
+  private static double link(int n) {
+    return Math.min(n, 5) * 10.0;
+  }
+
+  @Test
+  public void testConverges() {
+    ConcurrencyController c = new ConcurrencyController(1, 16);
+    for (int i = 0; i < 50; i++) {
+      c.update(link(c.getLimit()), 0, true);
+    }
+    for (int i = 0; i < 20; i++) {
+      int l = c.update(link(c.getLimit()), 0, true);
+      assertTrue("limit " + l, l >= 4 && l <= 6);
+    }
+  }
+
+  @Test
+  public void testBacksOffOnFailures() {
+    ConcurrencyController c = new ConcurrencyController(2, 16);
+    for (int i = 0; i < 6; i++) {
+      c.update(i * 100.0, 0, true);
+    }
+    assertEquals(8, c.getLimit());
+    assertEquals(4, c.update(100, 3, true));
+    assertEquals(2, c.update(100, 1, true));
+    assertEquals(2, c.update(100, 1, true));
+  }
+
+  @Test
+  public void testHoldsWhenNotSaturated() {
+    ConcurrencyController c = new ConcurrencyController(1, 16);
+    for (int i = 0; i < 10; i++) {
+      c.update(i * 100.0, 0, false);
+    }
+    assertEquals(1, c.getLimit());
+  }
+}
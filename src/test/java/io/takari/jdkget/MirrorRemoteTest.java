@@ -0,0 +1,93 @@
+package io.takari.jdkget;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.EnumSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.hash.Hashing;
+
+import io.takari.jdkget.MirrorPlan.Action;
+import io.takari.jdkget.mirror.MirrorTransport;
+import io.takari.jdkget.model.BinaryType;
+import io.takari.jdkget.model.JdkReleases;
+import io.takari.jdkget.model.VersionRange;
+
+public class MirrorRemoteTest {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder(new File("target/")); // trash target and not system
+
+  @Test
+  public void testDuplicatesAreFetchedOnce() throws Exception {
+    byte[] data = "jdk image".getBytes("UTF-8");
+    String sha256 = Hashing.sha256().hashBytes(data).toString();
+
+    // the source only has one of the paths, the other one can only be mirrored as a link to it
+    File source = temporaryFolder.newFolder("source");
+    File image = new File(source, "jdk/8u1/jdk.tar.gz");
+    image.getParentFile().mkdirs();
+    Files.write(image.toPath(), data);
+
+    JdkReleases rels = JdkReleases.newBuilder() //
+        .addBinary("1.8.0_1-b01", BinaryType.JDK, Arch.NIX_64, "jdk/8u1/jdk.tar.gz", null, sha256, data.length) //
+        .addBinary("1.8.0_2-b01", BinaryType.JDK, Arch.NIX_64, "jdk/8u2/jdk.tar.gz", null, sha256, data.length) //
+        .build();
+
+    File out = temporaryFolder.newFolder("mirror");
+    // a partial download of the linked path is left alone
+    File part = new File(out, "jdk/8u2/jdk.tar.gz.part");
+    part.getParentFile().mkdirs();
+    Files.write(part.toPath(), data);
+
+    MirrorTransport transport = new MirrorTransport(source);
+    transport.setHardlinks(false);
+    new MirrorRemote(transport, 1, true).mirrorRemote(rels, VersionRange.parse(".."), EnumSet.noneOf(Arch.class),
+        new String[] {"jdk"}, out);
+
+    File f1 = new File(out, "jdk/8u1/jdk.tar.gz");
+    File f2 = new File(out, "jdk/8u2/jdk.tar.gz");
+    assertArrayEquals(data, Files.readAllBytes(f2.toPath()));
+    assertTrue(Files.isSameFile(f1.toPath(), f2.toPath()));
+    assertTrue(part.exists());
+  }
+
+  @Test
+  public void testPlan() throws Exception {
+    byte[] d1 = "first jdk".getBytes("UTF-8");
+    byte[] d2 = "second jdk".getBytes("UTF-8");
+    File source = temporaryFolder.newFolder("source");
+    for (String p : new String[] {"jdk/8u1/jdk.tar.gz", "jdk/8u2/jdk.tar.gz"}) {
+      new File(source, p).getParentFile().mkdirs();
+      Files.write(new File(source, p).toPath(), p.contains("8u1") ? d1 : d2);
+    }
+    JdkReleases rels = JdkReleases.newBuilder() //
+        .addBinary("1.8.0_1-b01", BinaryType.JDK, Arch.NIX_64, "jdk/8u1/jdk.tar.gz", null,
+            Hashing.sha256().hashBytes(d1).toString(), d1.length) //
+        .addBinary("1.8.0_2-b01", BinaryType.JDK, Arch.NIX_64, "jdk/8u2/jdk.tar.gz", null,
+            Hashing.sha256().hashBytes(d2).toString(), d2.length) //
+        .build();
+
+    File out = temporaryFolder.newFolder("mirror");
+    MirrorRemote mr = new MirrorRemote(new MirrorTransport(source), 1, true);
+    String[] types = new String[] {"jdk"};
+    mr.mirrorRemote(rels, VersionRange.parse("8u1"), EnumSet.noneOf(Arch.class), types, out);
+
+    MirrorPlan plan = mr.plan(rels, VersionRange.parse(".."), EnumSet.noneOf(Arch.class), types, out);
+    assertEquals(1, plan.count(Action.DOWNLOAD));
+    assertEquals(1, plan.count(Action.UP_TO_DATE));
+    assertEquals(d2.length, plan.getDownloadBytes());
+
+    mr.mirrorRemote(plan);
+    assertArrayEquals(d2, Files.readAllBytes(new File(out, "jdk/8u2/jdk.tar.gz").toPath()));
+    plan = mr.plan(rels, VersionRange.parse(".."), EnumSet.noneOf(Arch.class), types, out);
+    assertEquals(2, plan.count(Action.UP_TO_DATE));
+  }
+}
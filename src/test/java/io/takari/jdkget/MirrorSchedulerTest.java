@@ -0,0 +1,71 @@
+package io.takari.jdkget;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class MirrorSchedulerTest {
+
+  @Test
+  public void testLargestFirst() throws Exception {
+    MirrorScheduler s = new MirrorScheduler(1, 1, 0);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<Long> order = Collections.synchronizedList(new ArrayList<>());
+
+    s.download(null, 100, () -> {
+      started.countDown();
+      release.await();
+    });
+    started.await();
+    for (long size : new long[] {1, 30, 20, 5}) {
+      s.download(null, size, () -> order.add(size));
+    }
+    release.countDown();
+    s.await();
+
+    assertEquals(Arrays.asList(30L, 20L, 5L, 1L), order);
+  }
+
+  @Test
+  public void testHostConnections() throws Exception {
+    MirrorScheduler s = new MirrorScheduler(4, 1, 1);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger max = new AtomicInteger();
+    AtomicInteger other = new AtomicInteger();
+
+    for (int i = 0; i < 4; i++) {
+      s.download("a", 10, () -> {
+        max.accumulateAndGet(running.incrementAndGet(), Math::max);
+        Thread.sleep(20);
+        running.decrementAndGet();
+      });
+    }
+    s.download("b", 1, other::incrementAndGet);
+    s.await();
+
+    assertEquals(1, max.get());
+    assertEquals(1, other.get());
+  }
+
+  @Test
+  public void testValidationQueuesDownload() throws Exception {
+    MirrorScheduler s = new MirrorScheduler(1, 2, 0);
+    AtomicInteger downloads = new AtomicInteger();
+    for (int i = 0; i < 3; i++) {
+      s.validate(() -> {
+        Thread.sleep(10);
+        s.download(null, 1, downloads::incrementAndGet);
+      });
+    }
+    s.await();
+    assertEquals(3, downloads.get());
+  }
+}
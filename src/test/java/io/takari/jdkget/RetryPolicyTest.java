@@ -0,0 +1,142 @@
+package io.takari.jdkget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.takari.jdkget.RetryPolicy.CircuitOpenException;
+import io.takari.jdkget.model.JCE;
+import io.takari.jdkget.oracle.OracleWebsiteTransport;
+
+public class RetryPolicyTest {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder(new File("target/")); // trash target and not system
+
+  @Test
+  public void testDelayIsCappedAndJittered() {
+    RetryPolicy p = new RetryPolicy(100, 1000, 10, 0.1, 5, 1000);
+    for (int attempt = 0; attempt < 100; attempt++) {
+      long cap = Math.min(1000, attempt < 10 ? 100L << attempt : 1000);
+      for (int i = 0; i < 20; i++) {
+        long d = p.delay(attempt);
+        assertTrue(d >= 0 && d <= cap);
+      }
+    }
+  }
+
+  @Test
+  public void testBudget() {
+    RetryPolicy p = new RetryPolicy(0, 0, 2, 0.5, 5, 1000);
+    assertTrue(p.acquireRetry());
+    assertTrue(p.acquireRetry());
+    assertFalse(p.acquireRetry());
+
+    p.succeeded();
+    assertFalse(p.acquireRetry());
+    p.succeeded();
+    assertTrue(p.acquireRetry());
+  }
+
+  @Test
+  public void testCircuitBreaker() throws Exception {
+    RetryPolicy p = new RetryPolicy(0, 0, 10, 0.1, 2, 50);
+    p.hostFailed("a");
+    p.checkHost("a");
+    p.hostFailed("a");
+    assertOpen(p, "a");
+    p.checkHost("b");
+
+    Thread.sleep(60);
+    p.checkHost("a"); // probe
+    assertOpen(p, "a");
+
+    p.hostSucceeded("a");
+    p.checkHost("a");
+  }
+
+  @Test
+  public void testAbandonedProbe() throws Exception {
+    RetryPolicy p = new RetryPolicy(0, 0, 10, 0.1, 1, 0);
+    p.hostFailed("a");
+    p.checkHost("a"); // probe
+    assertOpen(p, "a");
+
+    p.hostAbandoned("a");
+    p.checkHost("a"); // next probe
+    assertOpen(p, "a");
+  }
+
+  @Test
+  public void testProbeAnsweredByRedirect() throws Exception {
+    byte[] body = "policy".getBytes(StandardCharsets.UTF_8);
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", ex -> {
+      String path = ex.getRequestURI().getPath();
+      if (path.equals("/redirect")) {
+        ex.getResponseHeaders().set("Location", "http://127.0.0.1:" + ex.getLocalAddress().getPort() + "/file");
+        ex.sendResponseHeaders(302, -1);
+      } else if (path.equals("/file")) {
+        ex.sendResponseHeaders(200, body.length);
+        try (OutputStream os = ex.getResponseBody()) {
+          os.write(body);
+        }
+      } else {
+        ex.sendResponseHeaders(404, -1);
+      }
+      ex.close();
+    });
+    server.start();
+
+    OracleWebsiteTransport transport =
+        new OracleWebsiteTransport("http://127.0.0.1:" + server.getAddress().getPort());
+    try {
+      RetryPolicy p = new RetryPolicy(0, 0, 10, 0.1, 1, 0);
+      JdkGetter context = new JdkGetter(transport, IOutput.NULL_OUTPUT);
+      context.setSilent(true);
+      context.setRetryPolicy(p);
+      File target = new File(temporaryFolder.getRoot(), "jce.zip");
+
+      // the probe is redirected to the same host, which then has to be let through
+      p.hostFailed("127.0.0.1");
+      transport.downloadJce(context, new JCE(8, "redirect"), target);
+      assertEquals("policy", new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8));
+
+      p.hostFailed("127.0.0.1");
+      try {
+        transport.downloadJce(context, new JCE(8, "missing"), target);
+        fail();
+      } catch (CircuitOpenException e) {
+        throw e;
+      } catch (IOException e) {
+        // 404
+      }
+      p.checkHost("127.0.0.1");
+    } finally {
+      transport.close();
+      server.stop(0);
+    }
+  }
+
+  private static void assertOpen(RetryPolicy p, String host) {
+    try {
+      p.checkHost(host);
+      fail();
+    } catch (CircuitOpenException e) {
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package io.takari.jdkget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ThrottleTest {
+
+  @Test
+  public void testParseRate() {
+    assertEquals(1000L, Throttle.parseRate("1000"));
+    assertEquals(512L * 1024L, Throttle.parseRate("512k"));
+    assertEquals(5L * 1024L * 1024L, Throttle.parseRate("5M"));
+    assertEquals(1024L * 1024L * 1024L, Throttle.parseRate("1g"));
+  }
+
+  @Test
+  public void testHours() {
+    Throttle day = new Throttle(1000, 8, 18, 0);
+    assertFalse(day.isLimiting(7));
+    assertTrue(day.isLimiting(8));
+    assertTrue(day.isLimiting(17));
+    assertFalse(day.isLimiting(18));
+
+    Throttle night = new Throttle(1000, 22, 6, 0);
+    assertTrue(night.isLimiting(23));
+    assertTrue(night.isLimiting(0));
+    assertFalse(night.isLimiting(6));
+    assertFalse(night.isLimiting(12));
+
+    assertTrue(new Throttle(1000, -1, -1, 0).isLimiting(12));
+    assertFalse(new Throttle(0, -1, -1, 0).isLimiting(12));
+  }
+
+  @Test
+  public void testFromParameters() {
+    Throttle unlimited = Throttle.fromParameters(Collections.emptyMap());
+    assertEquals(0, unlimited.getBytesPerSecond());
+    assertEquals(0, unlimited.getHostConnections());
+    assertNotSame(unlimited, Throttle.fromParameters(null));
+
+    Map<String, String> params = new HashMap<>();
+    params.put(ITransportFactory.PARAM_RATE_LIMIT, "2m");
+    params.put(ITransportFactory.PARAM_RATE_LIMIT_HOURS, "9-17");
+    params.put(ITransportFactory.PARAM_HOST_CONNECTIONS, "4");
+    Throttle t = Throttle.fromParameters(params);
+    assertEquals(2L * 1024L * 1024L, t.getBytesPerSecond());
+    assertEquals(4, t.getHostConnections());
+    assertTrue(t.isLimiting(9));
+    assertFalse(t.isLimiting(17));
+  }
+}
@@ -1,6 +1,8 @@
 package io.takari.jdkget;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import io.takari.jdkget.model.JdkVersion;
 
@@ -96,4 +98,15 @@ public class VersionsTest {
     assertEquals(null, v6.buildNumber);
 
   }
+
+  @Test
+  public void testOrder() {
+    assertSame(JdkVersion.parse("8u151-b12"), JdkVersion.parse("8u151-b12"));
+    assertTrue(JdkVersion.parse("8u151-b12").compareTo(JdkVersion.parse("8u151-b2")) > 0);
+    assertTrue(JdkVersion.parse("8u151").compareTo(JdkVersion.parse("8u152")) < 0);
+    assertTrue(JdkVersion.parse("8").compareTo(JdkVersion.parse("8u5")) < 0);
+    assertTrue(JdkVersion.parse("9+181").compareTo(JdkVersion.parse("8u202")) > 0);
+    assertTrue(JdkVersion.parse("11.0.2+9").compareTo(JdkVersion.parse("11.0.10+9")) < 0);
+    assertEquals(0, JdkVersion.parse("1.8.0_151-b12").compareTo(JdkVersion.parse("8u151-b12")));
+  }
 }
@@ -0,0 +1,64 @@
+package io.takari.jdkget.mirror;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.takari.jdkget.Arch;
+import io.takari.jdkget.model.JdkBinary;
+import io.takari.jdkget.model.JdkReleases;
+
+public class MirrorManifestTest {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder(new File("target/")); // trash target and not system
+
+  @Test
+  public void testTrustsUnchangedFiles() throws Exception {
+    File root = temporaryFolder.newFolder("mirror");
+    JdkBinary bin = binary("abc");
+    File f = image(root, "jdk image");
+
+    MirrorManifest m = MirrorManifest.load(root);
+    assertFalse(m.isTrusted(bin, f));
+    m.verified(bin, f);
+    m.save();
+
+    assertTrue(MirrorManifest.load(root).isTrusted(bin, f));
+    assertFalse(MirrorManifest.load(root).isTrusted(binary("def"), f));
+    assertFalse(MirrorManifest.load(root, -1).isTrusted(bin, f));
+  }
+
+  @Test
+  public void testDistrustsChangedFiles() throws Exception {
+    File root = temporaryFolder.newFolder("mirror");
+    JdkBinary bin = binary("abc");
+    File f = image(root, "jdk image");
+
+    MirrorManifest m = MirrorManifest.load(root);
+    m.verified(bin, f);
+    m.save();
+
+    Files.write(f.toPath(), "jdk imagf".getBytes("UTF-8"));
+    f.setLastModified(f.lastModified() + 2000L);
+    assertFalse(MirrorManifest.load(root).isTrusted(bin, f));
+  }
+
+  private static File image(File root, String content) throws Exception {
+    File f = new File(root, "jdk.tar.gz");
+    Files.write(f.toPath(), content.getBytes("UTF-8"));
+    return f;
+  }
+
+  private static JdkBinary binary(String sha256) {
+    return JdkReleases.newBuilder() //
+        .addBinary("1.8.0_1-b01", Arch.NIX_64, "jdk.tar.gz", null, sha256, 9) //
+        .build().getReleases().get(0).getBinaries(null, Arch.NIX_64).get(0);
+  }
+}
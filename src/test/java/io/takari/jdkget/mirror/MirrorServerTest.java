@@ -0,0 +1,114 @@
+package io.takari.jdkget.mirror;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.takari.jdkget.IOutput;
+
+public class MirrorServerTest {
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder(new File("target/")); // trash target and not system
+
+  private final byte[] data = new byte[100000];
+  private MirrorServer server;
+  private String base;
+
+  @Before
+  public void start() throws Exception {
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    File root = temporaryFolder.newFolder("mirror");
+    new File(root, "java/jdk").mkdirs();
+    Files.write(new File(root, "java/jdk/jdk.tar.gz").toPath(), data);
+    Files.write(new File(root, MirrorManifest.FILENAME).toPath(), data);
+
+    server = new MirrorServer(root, new InetSocketAddress("127.0.0.1", 0), 2, IOutput.NULL_OUTPUT);
+    server.setCatalog("defaults:\n".getBytes("UTF-8"));
+    server.start();
+    base = "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  @After
+  public void stop() throws Exception {
+    server.close();
+  }
+
+  @Test
+  public void testGet() throws Exception {
+    HttpURLConnection conn = open("/java/jdk/jdk.tar.gz");
+    assertEquals(200, conn.getResponseCode());
+    assertArrayEquals(data, body(conn));
+
+    assertEquals(404, open("/" + MirrorManifest.FILENAME).getResponseCode());
+    assertEquals(404, open("/java/../" + MirrorManifest.FILENAME).getResponseCode());
+    assertEquals(404, open("/java/jdk/missing.tar.gz").getResponseCode());
+
+    conn = open(MirrorServer.CATALOG_PATH);
+    assertEquals(200, conn.getResponseCode());
+    assertArrayEquals("defaults:\n".getBytes("UTF-8"), body(conn));
+  }
+
+  @Test
+  public void testRange() throws Exception {
+    HttpURLConnection conn = open("/java/jdk/jdk.tar.gz");
+    conn.setRequestProperty("Range", "bytes=1000-1999");
+    assertEquals(206, conn.getResponseCode());
+    assertEquals("bytes 1000-1999/100000", conn.getHeaderField("Content-Range"));
+    assertArrayEquals(Arrays.copyOfRange(data, 1000, 2000), body(conn));
+
+    conn = open("/java/jdk/jdk.tar.gz");
+    conn.setRequestProperty("Range", "bytes=200000-");
+    assertEquals(416, conn.getResponseCode());
+  }
+
+  @Test
+  public void testConditional() throws Exception {
+    HttpURLConnection conn = open("/java/jdk/jdk.tar.gz");
+    assertEquals(200, conn.getResponseCode());
+    String etag = conn.getHeaderField("ETag");
+    String lastModified = conn.getHeaderField("Last-Modified");
+    body(conn);
+
+    conn = open("/java/jdk/jdk.tar.gz");
+    conn.setRequestProperty("If-None-Match", etag);
+    assertEquals(304, conn.getResponseCode());
+
+    conn = open("/java/jdk/jdk.tar.gz");
+    conn.setRequestProperty("If-Modified-Since", lastModified);
+    assertEquals(304, conn.getResponseCode());
+
+    // a stale validator gets the whole file instead of the range
+    conn = open("/java/jdk/jdk.tar.gz");
+    conn.setRequestProperty("Range", "bytes=0-9");
+    conn.setRequestProperty("If-Range", "\"stale\"");
+    assertEquals(200, conn.getResponseCode());
+    assertArrayEquals(data, body(conn));
+  }
+
+  private HttpURLConnection open(String path) throws Exception {
+    return (HttpURLConnection) new URL(base + path).openConnection();
+  }
+
+  private static byte[] body(HttpURLConnection conn) throws Exception {
+    try (InputStream in = conn.getInputStream()) {
+      return IOUtils.toByteArray(in);
+    }
+  }
+}
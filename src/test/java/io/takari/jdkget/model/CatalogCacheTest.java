@@ -0,0 +1,167 @@
+package io.takari.jdkget.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class CatalogCacheTest {
+
+  private static final String ETAG = "\"v1\"";
+  private static final String LAST_MODIFIED = "Wed, 20 Mar 2019 13:53:20 GMT";
+  private static final int TIMEOUT = 5000;
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder(new File("target/")); // trash target and not system
+
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger bodies = new AtomicInteger();
+  private volatile String cacheControl = "max-age=0";
+  private volatile String ifNoneMatch;
+  private volatile String ifModifiedSince;
+  private HttpServer server;
+  private CatalogCache cache;
+  private String url;
+
+  @Before
+  public void start() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", this::handle);
+    server.start();
+    url = "http://127.0.0.1:" + server.getAddress().getPort() + "/java_releases_v1.yml";
+    cache = new CatalogCache(temporaryFolder.newFolder("catalog"));
+  }
+
+  @After
+  public void stop() {
+    server.stop(0);
+  }
+
+  /**
+   * Serves a fixed catalog with validators, answering matching conditional requests with a 304.
+   */
+  private void handle(HttpExchange ex) throws IOException {
+    requests.incrementAndGet();
+    ifNoneMatch = ex.getRequestHeaders().getFirst("If-None-Match");
+    ifModifiedSince = ex.getRequestHeaders().getFirst("If-Modified-Since");
+    ex.getResponseHeaders().set("ETag", ETAG);
+    ex.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+    ex.getResponseHeaders().set("Cache-Control", cacheControl);
+    if (ETAG.equals(ifNoneMatch)) {
+      ex.sendResponseHeaders(304, -1);
+    } else {
+      bodies.incrementAndGet();
+      byte[] body = "defaults:\n".getBytes(StandardCharsets.UTF_8);
+      ex.sendResponseHeaders(200, body.length);
+      try (OutputStream out = ex.getResponseBody()) {
+        out.write(body);
+      }
+    }
+    ex.close();
+  }
+
+  @Test
+  public void testStoresValidators() throws Exception {
+    File f = cache.fetch(url, TIMEOUT);
+    assertEquals("defaults:\n", read(f));
+    assertEquals(1, bodies.get());
+    assertNull(ifNoneMatch);
+
+    Properties meta = meta(f);
+    assertEquals(ETAG, meta.getProperty("etag"));
+    assertEquals(LAST_MODIFIED, meta.getProperty("lastModified"));
+  }
+
+  @Test
+  public void testNotModified() throws Exception {
+    File f = cache.fetch(url, TIMEOUT);
+    long mtime = f.lastModified();
+
+    f = cache.fetch(url, TIMEOUT);
+    assertEquals(2, requests.get());
+    assertEquals(ETAG, ifNoneMatch);
+    assertEquals(LAST_MODIFIED, ifModifiedSince);
+    // the 304 had no body, the stored copy is used as it is
+    assertEquals(1, bodies.get());
+    assertEquals(mtime, f.lastModified());
+    assertEquals("defaults:\n", read(f));
+  }
+
+  @Test
+  public void testWithinMaxAge() throws Exception {
+    cacheControl = "max-age=600";
+    cache.fetch(url, TIMEOUT);
+    File f = cache.fetch(url, TIMEOUT);
+    assertEquals(1, requests.get());
+    assertEquals("defaults:\n", read(f));
+  }
+
+  @Test
+  public void testStaleWhenUnreachable() throws Exception {
+    cache.fetch(url, TIMEOUT);
+    server.stop(0);
+
+    File f = cache.fetch(url, TIMEOUT);
+    assertEquals("defaults:\n", read(f));
+
+    try {
+      new CatalogCache(temporaryFolder.newFolder("empty")).fetch(url, TIMEOUT);
+      fail();
+    } catch (IOException e) {
+      // nothing to fall back to
+    }
+  }
+
+  @Test
+  public void testInvalidMetadata() throws Exception {
+    cacheControl = "max-age=600";
+    File f = cache.fetch(url, TIMEOUT);
+    Properties meta = meta(f);
+    meta.setProperty("fetched", "yesterday");
+    try (OutputStream out = new FileOutputStream(metaFile(f))) {
+      meta.store(out, null);
+    }
+
+    // fetched again from scratch
+    f = cache.fetch(url, TIMEOUT);
+    assertEquals(2, bodies.get());
+    assertNull(ifNoneMatch);
+    assertEquals("defaults:\n", read(f));
+  }
+
+  private static File metaFile(File data) {
+    return new File(data.getParentFile(), data.getName().replaceAll("\\.yml$", ".properties"));
+  }
+
+  private static Properties meta(File data) throws IOException {
+    Properties meta = new Properties();
+    try (InputStream in = new FileInputStream(metaFile(data))) {
+      meta.load(in);
+    }
+    return meta;
+  }
+
+  private static String read(File f) throws IOException {
+    return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,88 @@
+package io.takari.jdkget.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import io.takari.jdkget.Arch;
+
+public class CatalogSnapshotTest {
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    JdkReleases yaml;
+    try (InputStream in = getClass().getClassLoader().getResourceAsStream("java_releases_v1.yml")) {
+      yaml = JdkReleases.read(in);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CatalogSnapshot.write(yaml, 42L, out);
+    JdkReleases snap = CatalogSnapshot.read(new ByteArrayInputStream(out.toByteArray()), 42L);
+
+    assertEquals(yaml.getTransport(), snap.getTransport());
+    assertEquals(yaml.jces.size(), snap.jces.size());
+    for (int i = 0; i < yaml.jces.size(); i++) {
+      assertEquals(yaml.jces.get(i).getMajorVersion(), snap.jces.get(i).getMajorVersion());
+      assertEquals(yaml.jces.get(i).getPath(), snap.jces.get(i).getPath());
+    }
+
+    assertEquals(yaml.getReleases().size(), snap.getReleases().size());
+    for (int i = 0; i < yaml.getReleases().size(); i++) {
+      JdkRelease r1 = yaml.getReleases().get(i);
+      JdkRelease r2 = snap.getReleases().get(i);
+      JdkVersion v1 = r1.getVersion();
+      JdkVersion v2 = r2.getVersion();
+      assertEquals(v1.getClass(), v2.getClass());
+      assertEquals(v1.major, v2.major);
+      assertEquals(v1.minor, v2.minor);
+      assertEquals(v1.security, v2.security);
+      assertEquals(v1.buildNumber, v2.buildNumber);
+      assertEquals(r1.isPsu(), r2.isPsu());
+      assertEquals(r1.binaries.keySet(), r2.binaries.keySet());
+      for (Map.Entry<BinaryType, Map<Arch, List<JdkBinary>>> e : r1.binaries.entrySet()) {
+        Map<Arch, List<JdkBinary>> bins = r2.binaries.get(e.getKey());
+        assertEquals(e.getValue().keySet(), bins.keySet());
+        for (Map.Entry<Arch, List<JdkBinary>> ae : e.getValue().entrySet()) {
+          List<JdkBinary> b2 = bins.get(ae.getKey());
+          assertEquals(ae.getValue().size(), b2.size());
+          for (int j = 0; j < b2.size(); j++) {
+            JdkBinary b1 = ae.getValue().get(j);
+            assertEquals(b1.getPath(), b2.get(j).getPath());
+            assertEquals(b1.getMd5(), b2.get(j).getMd5());
+            assertEquals(b1.getSha256(), b2.get(j).getSha256());
+            assertEquals(b1.getSize(), b2.get(j).getSize());
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testZeroUpdate() throws Exception {
+    JdkReleases rels = JdkReleases.newBuilder() //
+        .addBinary("7u0-b147", BinaryType.JDK, Arch.NIX_64, "jdk-7.tar.gz") //
+        .addBinary("7u1-b08", BinaryType.JDK, Arch.NIX_64, "jdk-7u1.tar.gz") //
+        .build();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CatalogSnapshot.write(rels, 1L, out);
+    JdkReleases snap = CatalogSnapshot.read(new ByteArrayInputStream(out.toByteArray()), 1L);
+    assertEquals(0, snap.select("7u0").getVersion().minor);
+  }
+
+  @Test
+  public void testOutdated() throws Exception {
+    JdkReleases rels = JdkReleases.newBuilder() //
+        .addBinary("1.8.0_131-b11", BinaryType.JDK, Arch.NIX_64, "jdk.tar.gz") //
+        .build();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CatalogSnapshot.write(rels, 1L, out);
+    assertNull(CatalogSnapshot.read(new ByteArrayInputStream(out.toByteArray()), 2L));
+  }
+}
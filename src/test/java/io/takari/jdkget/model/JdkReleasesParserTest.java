@@ -0,0 +1,59 @@
+package io.takari.jdkget.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import io.takari.jdkget.Arch;
+
+public class JdkReleasesParserTest {
+
+  private static JdkReleases parse(String yaml) throws Exception {
+    return new JdkReleasesParser().parse(new ByteArrayInputStream(yaml.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testParse() throws Exception {
+    JdkReleases rels = parse("" //
+        + "java:\n" //
+        + "- version: \"8u202-b08\"\n" //
+        + "  psu: true\n" //
+        + "  jdk:\n" //
+        + "  - { arch: \"linux-x64\", ext: \"tar.gz\", md5: \"abc\", size: 42 }\n" //
+        + "  jre:\n" //
+        + "  - { arch: \"linux-x64\", ext: \"tar.gz\", url: \"custom/${typeName}-${foo}.${ext}\" }\n" //
+        + "defaults:\n" //
+        + "  transport: some.Transport\n" //
+        + "  url: \"java/${version}${build}/${typeName}-${version}-${arch}.${ext}\"\n" //
+        + "  typeName: { jdk: \"jdk\", jre: \"jre\" }\n" //
+        + "  archCls: { linux-x64: \"nix_64\" }\n" //
+        + "jce:\n" //
+        + "- { version: \"8\", url: \"jce-8.zip\" }\n");
+
+    assertEquals("some.Transport", rels.getTransport());
+    assertEquals("jce-8.zip", rels.getJCE(JdkVersion.parse("8")).getPath());
+
+    JdkRelease rel = rels.getReleases().get(0);
+    assertTrue(rel.isPsu());
+    JdkBinary jdk = rel.getBinaries(BinaryType.JDK, Arch.NIX_64).get(0);
+    assertEquals("java/8u202-b08/jdk-8u202-linux-x64.tar.gz", jdk.getPath());
+    assertEquals("abc", jdk.getMd5());
+    assertEquals(42L, jdk.getSize());
+    assertEquals("custom/jre-${foo}.tar.gz", rel.getBinaries(BinaryType.JRE, Arch.NIX_64).get(0).getPath());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testUnknownArch() throws Exception {
+    parse("" //
+        + "defaults:\n" //
+        + "  url: \"${arch}\"\n" //
+        + "java:\n" //
+        + "- version: \"8u202-b08\"\n" //
+        + "  jdk:\n" //
+        + "  - { arch: \"linux-x64\", ext: \"tar.gz\" }\n");
+  }
+}
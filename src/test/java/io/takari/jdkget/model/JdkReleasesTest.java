@@ -0,0 +1,52 @@
+package io.takari.jdkget.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import io.takari.jdkget.Arch;
+
+public class JdkReleasesTest {
+
+  private static JdkReleases releases() {
+    return JdkReleases.newBuilder() //
+        .addBinary("11.0.2+9", BinaryType.JDK, Arch.NIX_64, "jdk-11.0.2_linux-x64_bin.tar.gz") //
+        .addBinary("11.0.1+13", BinaryType.JDK, Arch.NIX_64, "jdk-11.0.1_linux-x64_bin.tar.gz") //
+        .addBinary("8u202-b08", BinaryType.JDK, Arch.NIX_64, "jdk-8u202-linux-x64.tar.gz") //
+        .addBinary("8u201-b09", BinaryType.JDK, Arch.NIX_64, "jdk-8u201-linux-x64.tar.gz") //
+        .addBinary("8u191-b12", BinaryType.JDK, Arch.NIX_64, "jdk-8u191-linux-x64.rpm") //
+        .addBinary("8u191-b12", BinaryType.JDK, Arch.NIX_64, "jdk-8u191-linux-x64-rpm.bin") //
+        .addBinary("8u191-b12", BinaryType.JDK, Arch.NIX_64, "jdk-8u191-linux-x64.bin") //
+        .addBinary("8u191-b12", BinaryType.JDK, Arch.NIX_64, "jdk-8u191-linux-x64.tar.gz") //
+        .setPSU("11.0.2+9") //
+        .setPSU("8u202-b08") //
+        .build();
+  }
+
+  @Test
+  public void testSelect() {
+    JdkReleases rels = releases();
+    assertEquals("11.0.1+13", rels.latest().getVersion().shortBuild());
+    assertEquals("11.0.2+9", rels.latestInclPSU().getVersion().shortBuild());
+    assertEquals("8u201-b09", rels.select("8").getVersion().shortBuild());
+    assertEquals("11.0.1+13", rels.select("11").getVersion().shortBuild());
+    assertEquals("11.0.1+13", rels.select("11.0").getVersion().shortBuild());
+    assertEquals("11.0.2+9", rels.select("11.0.2").getVersion().shortBuild());
+    assertEquals("8u202-b08", rels.select("8u202").getVersion().shortBuild());
+    assertEquals("8u191-b12", rels.select("1.8.0_191-b12").getVersion().shortBuild());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testSelectMissingBuild() {
+    releases().select("8u191-b11");
+  }
+
+  @Test
+  public void testUnpackableBinary() throws Exception {
+    JdkRelease rel = releases().select("8u191");
+    assertEquals("jdk-8u191-linux-x64.tar.gz", rel.getUnpackableBinary(BinaryType.JDK, Arch.NIX_64).getPath());
+    assertNull(rel.getUnpackableBinary(BinaryType.JRE, Arch.NIX_64));
+    assertNull(rel.getUnpackableBinary(BinaryType.JDK, Arch.OSX_64));
+  }
+}
@@ -0,0 +1,84 @@
+package io.takari.jdkget.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import io.takari.jdkget.Arch;
+
+public class VersionRangeTest {
+
+  private static final JdkReleases RELEASES = JdkReleases.newBuilder() //
+      .addBinary("12+33", Arch.NIX_64, "12") //
+      .addBinary("11.0.2+9", Arch.NIX_64, "11.0.2") //
+      .addBinary("11.0.1+13", Arch.NIX_64, "11.0.1") //
+      .addBinary("11+28", Arch.NIX_64, "11") //
+      .addBinary("10.0.2+13", Arch.NIX_64, "10.0.2") //
+      .addBinary("9.0.4+11", Arch.NIX_64, "9.0.4") //
+      .addBinary("8u202-b08", Arch.NIX_64, "8u202") //
+      .addBinary("8u201-b09", Arch.NIX_64, "8u201") //
+      .addBinary("8u151-b12", Arch.NIX_64, "8u151") //
+      .addBinary("8u144-b01", Arch.NIX_64, "8u144") //
+      .addBinary("7u80-b15", Arch.NIX_64, "7u80") //
+      .setPSU("8u202-b08") //
+      .build();
+
+  private static final JdkReleases BUILDS = JdkReleases.newBuilder() //
+      .addBinary("8u201-b09", Arch.NIX_64, "8u201") //
+      .addBinary("8u151-b27", Arch.NIX_64, "8u151-b27") //
+      .addBinary("8u151-b12", Arch.NIX_64, "8u151-b12") //
+      .addBinary("8u144-b01", Arch.NIX_64, "8u144") //
+      .build();
+
+  private static String select(String expr) {
+    List<JdkRelease> rels = VersionRange.parse(expr).select(RELEASES);
+    return rels.stream().map(r -> r.getVersion().shortVersion()).collect(Collectors.joining(" "));
+  }
+
+  @Test
+  public void testPrefix() {
+    assertEquals("11.0.2 11.0.1 11", select("11.0.x"));
+    assertEquals("11.0.2 11.0.1 11", select("11"));
+    assertEquals("8u151", select("8u151"));
+    assertEquals("8u202 8u201 8u151 8u144", select("8ux"));
+  }
+
+  @Test
+  public void testRanges() {
+    assertEquals("8u202 8u201 8u151", select("8u151..8u202"));
+    assertEquals("11.0.2 11.0.1 11 10.0.2 9.0.4", select(">=9 <12"));
+    assertEquals("11.0.2 11.0.1 11 10.0.2 9.0.4", select(">= 9 < 12"));
+    assertEquals("12 11.0.2 11.0.1 11", select(">10.0"));
+    assertEquals("8u144 7u80", select("<=8u144"));
+    assertEquals("9.0.4 8u202 8u201 8u151 8u144 7u80", select("..9"));
+  }
+
+  @Test
+  public void testBetweenBuilds() {
+    assertEquals("8u151-b12 8u144-b01", between(null, "8u151-b12"));
+    assertEquals("8u201-b09 8u151-b27", between("8u151-b27", "8u201-b09"));
+    assertEquals("8u151-b27 8u151-b12", between("8u151", "8u151-b27"));
+    assertEquals("8u201-b09 8u151-b27 8u151-b12", between("8u151", "8u201"));
+  }
+
+  // resolves to like -vt does, 8u201 being the newest build of it
+  private static String between(String from, String to) {
+    VersionRange range = VersionRange.between(from == null ? null : JdkVersion.parse(from),
+        BUILDS.select(JdkVersion.parse(to)).getVersion());
+    return range.select(BUILDS).stream().map(r -> r.getVersion().shortBuild()).collect(Collectors.joining(" "));
+  }
+
+  @Test
+  public void testLatest() {
+    assertEquals("12 11.0.2 10.0.2 9.0.4 8u201 7u80", select("latest-per-major"));
+    assertEquals("12 8u151", select("latest, 8u151"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalid() {
+    VersionRange.parse(">=foo");
+  }
+}
@@ -0,0 +1,48 @@
+package io.takari.jdkget.oracle;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URI;
+
+import org.junit.Test;
+
+public class ResolvedUrlsTest {
+
+  private static final long NOW = 1553090000000L;
+
+  @Test
+  public void testOracleAuthParam() {
+    URI uri = URI.create("http://download.oracle.com/otn-pub/java/jdk-8u201.tar.gz?AuthParam=1553090600_0123abcd");
+    assertEquals(1553090600000L, ResolvedUrls.expiry(uri, NOW));
+  }
+
+  @Test
+  public void testExpires() {
+    URI uri = URI.create("https://cdn.example.com/jdk.zip?Expires=1553090120&Signature=x");
+    assertEquals(1553090120000L, ResolvedUrls.expiry(uri, NOW));
+  }
+
+  @Test
+  public void testAmzExpires() {
+    URI uri = URI.create("https://s3.example.com/jdk.zip?X-Amz-Date=20190320T135320Z&X-Amz-Expires=300");
+    assertEquals(1553090000000L + 300000L, ResolvedUrls.expiry(uri, NOW));
+  }
+
+  @Test
+  public void testDefaultAndMaxTtl() {
+    assertEquals(NOW + ResolvedUrls.DEFAULT_TTL, ResolvedUrls.expiry(URI.create("http://host/jdk.zip"), NOW));
+    assertEquals(NOW + ResolvedUrls.DEFAULT_TTL,
+        ResolvedUrls.expiry(URI.create("http://host/jdk.zip?AuthParam=garbage_x"), NOW));
+    assertEquals(NOW + ResolvedUrls.MAX_TTL,
+        ResolvedUrls.expiry(URI.create("http://host/jdk.zip?Expires=1853090000"), NOW));
+  }
+
+  @Test
+  public void testExpiredNotCached() {
+    ResolvedUrls urls = new ResolvedUrls();
+    urls.put("a", URI.create("http://host/a?Expires=1"), java.util.Collections.emptyList());
+    assertEquals(null, urls.get("a"));
+    urls.put("b", URI.create("http://host/b"), java.util.Collections.emptyList());
+    assertEquals(URI.create("http://host/b"), urls.get("b").uri);
+  }
+}
@@ -0,0 +1,227 @@
+package io.takari.jdkget.oracle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.hash.Hashing;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.takari.jdkget.Arch;
+import io.takari.jdkget.IOutput;
+import io.takari.jdkget.JdkGetter;
+import io.takari.jdkget.model.JdkBinary;
+import io.takari.jdkget.model.JdkReleases;
+import io.takari.jdkget.oracle.DownloadState.Segment;
+
+public class SegmentedDownloadTest {
+
+  private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+  @Rule
+  public final TemporaryFolder temporaryFolder = new TemporaryFolder(new File("target/")); // trash target and not system
+
+  // three segments of the minimum size and a bit
+  private final byte[] data = new byte[(int) (3 * DownloadState.MIN_SEGMENT_SIZE + 1000)];
+  private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+  private volatile String etag = "\"v1\"";
+  private volatile String contentRange;
+  private volatile boolean changeOnRange;
+  private HttpServer server;
+  private OracleWebsiteTransport transport;
+  private String url;
+
+  @Before
+  public void start() throws Exception {
+    new Random(1).nextBytes(data);
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", this::handle);
+    server.start();
+    String website = "http://127.0.0.1:" + server.getAddress().getPort();
+    url = website + "/jdk.tar.gz";
+    transport = new OracleWebsiteTransport(website);
+    transport.setConnections(3);
+  }
+
+  @After
+  public void stop() throws Exception {
+    transport.close();
+    server.stop(0);
+  }
+
+  /**
+   * Serves data with Range and If-Range support, recording the ranges requested.
+   */
+  private void handle(HttpExchange ex) throws IOException {
+    try {
+      String range = ex.getRequestHeaders().getFirst("Range");
+      String ifRange = ex.getRequestHeaders().getFirst("If-Range");
+      if (range != null && changeOnRange) {
+        etag = "\"v2\"";
+      }
+      ex.getResponseHeaders().set("ETag", etag);
+      ex.getResponseHeaders().set("Accept-Ranges", "bytes");
+      Matcher m = range == null ? null : RANGE.matcher(range);
+      if (m != null && m.matches() && (ifRange == null || ifRange.equals(etag))) {
+        ranges.add(range);
+        int start = Integer.parseInt(m.group(1));
+        int end = Integer.parseInt(m.group(2));
+        String cr = contentRange != null ? contentRange : "bytes " + start + "-" + end + "/" + data.length;
+        ex.getResponseHeaders().set("Content-Range", cr);
+        ex.sendResponseHeaders(206, end - start + 1);
+        try (OutputStream out = ex.getResponseBody()) {
+          out.write(data, start, end - start + 1);
+        }
+      } else {
+        ex.sendResponseHeaders(200, data.length);
+        try (OutputStream out = ex.getResponseBody()) {
+          out.write(data);
+        }
+      }
+    } catch (IOException e) {
+      // the client aborts full responses once it has the first segment
+    } finally {
+      ex.close();
+    }
+  }
+
+  @Test
+  public void testSplitDownload() throws Exception {
+    File target = new File(temporaryFolder.getRoot(), "jdk.tar.gz");
+    transport.downloadJdk(context(), binary(), target);
+
+    assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    // the first segment comes from the initial response, the others are requested alongside
+    long size = data.length / 3;
+    assertEquals(Arrays.asList("bytes=" + size + "-" + (2 * size - 1), "bytes=" + 2 * size + "-" + (data.length - 1)),
+        sorted(ranges));
+    assertEquals(data.length, transport.getThrottle().getTransferred());
+    assertFalse(new File(target.getPath() + OracleWebsiteTransport.PART_SUFFIX).exists());
+    assertFalse(new File(target.getPath() + OracleWebsiteTransport.STATE_SUFFIX).exists());
+  }
+
+  @Test
+  public void testRejectsMismatchingContentRange() throws Exception {
+    contentRange = "bytes 0-99/" + data.length;
+    File target = new File(temporaryFolder.getRoot(), "jdk.tar.gz");
+    try {
+      transport.downloadJdk(context(), binary(), target);
+      fail();
+    } catch (IOException e) {
+      assertFalse(e instanceof SegmentedDownload.ResourceChangedException);
+    }
+    assertFalse(target.exists());
+  }
+
+  @Test
+  public void testResume() throws Exception {
+    File target = new File(temporaryFolder.getRoot(), "jdk.tar.gz");
+    DownloadState state = DownloadState.create(url, data.length, etag, 3);
+    state.segments.get(0).pos = 1000;
+    state.segments.get(1).pos = state.segments.get(1).end;
+    long completed = partial(target, state);
+
+    transport.downloadJdk(context(), binary(), target);
+
+    assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    // only what is missing is requested
+    long size = data.length / 3;
+    assertEquals(Arrays.asList("bytes=1000-" + (size - 1), "bytes=" + 2 * size + "-" + (data.length - 1)),
+        sorted(ranges));
+    assertEquals(data.length - completed, transport.getThrottle().getTransferred());
+    assertFalse(new File(target.getPath() + OracleWebsiteTransport.STATE_SUFFIX).exists());
+  }
+
+  @Test
+  public void testChangedValidatorRestarts() throws Exception {
+    File target = new File(temporaryFolder.getRoot(), "jdk.tar.gz");
+    DownloadState state = DownloadState.create(url, data.length, "\"v0\"", 3);
+    state.segments.get(1).pos = state.segments.get(1).end;
+    partial(target, state);
+
+    transport.downloadJdk(context(), binary(), target);
+
+    assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    assertEquals(2, ranges.size());
+    assertEquals(data.length, transport.getThrottle().getTransferred());
+  }
+
+  @Test
+  public void testChangedDuringDownload() throws Exception {
+    changeOnRange = true;
+    File target = new File(temporaryFolder.getRoot(), "jdk.tar.gz");
+    try {
+      transport.downloadJdk(context(), binary(), target);
+      fail();
+    } catch (SegmentedDownload.ResourceChangedException e) {
+      // segments asked for v1 and got the whole v2
+    }
+    assertFalse(target.exists());
+    assertFalse(new File(target.getPath() + OracleWebsiteTransport.PART_SUFFIX).exists());
+    assertFalse(new File(target.getPath() + OracleWebsiteTransport.STATE_SUFFIX).exists());
+  }
+
+  /**
+   * Leaves a partial download of target as an interrupted one would, with the completed parts of the
+   * segments written and the rest zeros. Returns the number of bytes completed.
+   */
+  private long partial(File target, DownloadState state) throws IOException {
+    File part = new File(target.getPath() + OracleWebsiteTransport.PART_SUFFIX);
+    try (RandomAccessFile raf = new RandomAccessFile(part, "rw")) {
+      raf.setLength(data.length);
+      for (Segment seg : state.segments) {
+        raf.seek(seg.start);
+        raf.write(data, (int) seg.start, (int) (seg.pos - seg.start));
+      }
+      state.checkpoint(raf.getChannel(), new File(target.getPath() + OracleWebsiteTransport.STATE_SUFFIX));
+    }
+    return state.completed();
+  }
+
+  private static List<String> sorted(List<String> l) {
+    List<String> s = new ArrayList<>(l);
+    Collections.sort(s, (a, b) -> Long.compare(start(a), start(b)));
+    return s;
+  }
+
+  private static long start(String range) {
+    Matcher m = RANGE.matcher(range);
+    m.matches();
+    return Long.parseLong(m.group(1));
+  }
+
+  private JdkGetter context() {
+    JdkGetter context = new JdkGetter(transport, IOutput.NULL_OUTPUT);
+    context.setSilent(true);
+    return context;
+  }
+
+  private JdkBinary binary() {
+    return JdkReleases.newBuilder() //
+        .addBinary("1.8.0_1-b01", Arch.NIX_64, "jdk.tar.gz", null, Hashing.sha256().hashBytes(data).toString(),
+            data.length) //
+        .build().getReleases().get(0).getBinaries(null, Arch.NIX_64).get(0);
+  }
+}